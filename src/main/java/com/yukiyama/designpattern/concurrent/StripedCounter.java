@@ -0,0 +1,97 @@
+package com.yukiyama.designpattern.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 分段计数器
+ * 把一个频繁修改的计数拆成若干个分段，线程按自身id固定使用其中一个分段，
+ * 读取时再合并各分段，避免所有线程争用同一个计数所在的缓存行。
+ * 各分段的计数保存在同一个AtomicLongArray中，相邻分段相隔STRIDE个long
+ * (128字节)，首尾各留出STRIDE个元素，保证每个计数独占缓存行，且不受相邻
+ * 缓存行预取的影响。若每个分段各持有一个AtomicLong，这些小对象连续分配，
+ * 仍会落在同一缓存行上；在类中填充long字段又会被JVM重排字段，都不能可靠
+ * 地避免伪共享。
+ * 分段按线程id散列而不是像LongAdder那样在竞争时重新散列：调用方可以取得
+ * 分段下标并在之后使用同一个分段(例如登记和撤销同一次调用)，重新散列还
+ * 需要为每个线程保存探测值。线程数多于分段数时多个线程共用一个分段，因此
+ * 分段的计数仍以原子操作修改。
+ * sum逐个读取各分段，不是原子快照；但每个分段自身的读写都是原子的。
+ */
+public final class StripedCounter {
+    // 相邻分段计数在数组中的间隔，16个long即128字节
+    static final int STRIDE = 16;
+
+    private final int stripes;
+    private final AtomicLongArray counts;
+
+    // 分段数为CPU核数向上取2的幂
+    public StripedCounter() {
+        this(Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+    }
+
+    public StripedCounter(int stripes) {
+        if(stripes <= 0 || Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("分段数必须是2的幂: " + stripes);
+        }
+        this.stripes = stripes;
+        this.counts = new AtomicLongArray((stripes + 2) * STRIDE);
+    }
+
+    public int stripes() {
+        return stripes;
+    }
+
+    // 当前线程使用的分段，同一线程总是得到同一个分段
+    public int stripe() {
+        long id = Thread.currentThread().getId();
+        // 混合线程id的高低位，避免连续id集中在少数分段
+        int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (stripes - 1);
+    }
+
+    public void increment(int stripe) {
+        counts.incrementAndGet(slot(stripe));
+    }
+    public void decrement(int stripe) {
+        counts.decrementAndGet(slot(stripe));
+    }
+    public void add(int stripe, long delta) {
+        counts.addAndGet(slot(stripe), delta);
+    }
+    public long get(int stripe) {
+        return counts.get(slot(stripe));
+    }
+
+    // 所有分段的计数之和，并发修改时为近似值
+    public long sum() {
+        long sum = 0;
+        for(int i = 0; i < stripes; i++) {
+            sum += counts.get(slot(i));
+        }
+        return sum;
+    }
+    // 各分段当前计数的快照
+    public long[] snapshot() {
+        long[] values = new long[stripes];
+        for(int i = 0; i < stripes; i++) {
+            values[i] = counts.get(slot(i));
+        }
+        return values;
+    }
+    // 取出所有分段的计数之和并清零，并发写入的计数不会丢失
+    public long sumThenReset() {
+        long sum = 0;
+        for(int i = 0; i < stripes; i++) {
+            sum += counts.getAndSet(slot(i), 0);
+        }
+        return sum;
+    }
+
+    // 第stripe个分段的计数在数组中的下标
+    int slot(int stripe) {
+        if(stripe < 0 || stripe >= stripes) {
+            throw new IndexOutOfBoundsException("stripe: " + stripe + ", stripes: " + stripes);
+        }
+        return (stripe + 1) * STRIDE;
+    }
+}
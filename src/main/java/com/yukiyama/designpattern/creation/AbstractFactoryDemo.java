@@ -1,5 +1,22 @@
 package com.yukiyama.designpattern.creation;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.IntToLongFunction;
+import java.util.function.Supplier;
+
 /**
  * 抽象工厂模式
  * 工厂方法模式的扩展，结构相似，但工厂方法中的工厂类只能生产一种产品，抽象
@@ -10,6 +27,13 @@ package com.yukiyama.designpattern.creation;
  * 本示例以四则运算为例，演示客户端如何声明一个具体的运算工厂并获取多种不同
  * 的运算产品，然后这些产品执行其产品方法(执行运算)返回结果。
  * 
+ * 除int和double外，工厂还生产long和float两个产品族，每种产品既有对两个数的
+ * 运算方法，也有对整列数据的运算方法result(a[], b[], out[])，同一个具体
+ * 工厂即可处理各种基本类型的整列数据，不必装箱。
+ * 同一种运算的整列实现可以有多个版本(普通循环、循环展开)，哪个更快取决于
+ * JVM和CPU。CalibratedAddFactory在首次创建时实测各候选实现，之后只生产
+ * 选中的那个，测量结果按JVM和CPU记录在本地文件中，下次启动直接读取。
+ * 
  * 结构
  * 抽象工厂类
  *   定义多个创建产品的抽象方法。有多少种产品就写多少个方法。
@@ -33,6 +57,21 @@ public class AbstractFactoryDemo {
         System.out.println(operInt.result(4, 5));
         // double型产品执行其产品方法(执行运算)
         System.out.println(operDouble.result(1.2, 1.7));
+        // 该加法工厂生产long型和float型产品
+        OperationLong operLong = fa.createOperationLong();
+        OperationFloat operFloat = fa.createOperationFloat();
+        System.out.println(operLong.result(3_000_000_000L, 1L));
+        System.out.println(operFloat.result(1.5f, 2.25f));
+        // 对整列数据运算，输出“[11, 22, 33]”
+        long[] col = new long[3];
+        operLong.result(new long[] {1, 2, 3}, new long[] {10, 20, 30}, col);
+        System.out.println(Arrays.toString(col));
+        // 实测后选择最快实现的加法工厂，输出“[5, 7, 9]”
+        IFactory calibrated = new CalibratedAddFactory(
+                Paths.get(System.getProperty("java.io.tmpdir"), "operation-kernels.properties"));
+        int[] intCol = new int[3];
+        calibrated.createOperationInt().result(new int[] {1, 2, 3}, new int[] {4, 5, 6}, intCol);
+        System.out.println(Arrays.toString(intCol));
     }
 
 }
@@ -45,6 +84,9 @@ abstract class IFactory{
     public abstract OperationInt createOperationInt();
     // 工厂方法模式的产品(运算)只有int型的，抽象工厂模式中多了double型产品
     public abstract OperationDouble createOperationDouble();
+    // long型和float型产品族
+    public abstract OperationLong createOperationLong();
+    public abstract OperationFloat createOperationFloat();
 }
 
 /**
@@ -61,15 +103,255 @@ class OperationAddFactory extends IFactory{
     public OperationDouble createOperationDouble() {
         return new OperationDoubleAdd();
     }
+    @Override
+    public OperationLong createOperationLong() {
+        return new OperationLongAdd();
+    }
+    @Override
+    public OperationFloat createOperationFloat() {
+        return new OperationFloatAdd();
+    }
+}
+
+/**
+ * 具体工厂类
+ * 加法工厂，int和double产品各有多个候选实现。创建工厂时先查本地缓存文件，
+ * 没有当前JVM和CPU的记录时实测各候选实现的整列运算耗时，选出最快的实现并
+ * 写回缓存文件。缓存文件读写失败不影响使用，只是每次都需要实测。
+ * 实测时每个候选有自己的计时循环，循环内的调用点只见到一种实现，不会因为
+ * 共用调用点变成多态调用而拖慢后测的候选；各候选按轮交替测量，使JIT编译和
+ * CPU频率的变化平摊到每个候选上。第一个候选是默认实现，其他候选要比它快
+ * MIN_MARGIN以上才会被选中，以免测量噪声导致每台机器选出的实现来回变化。
+ * 缓存先写到同目录的临时文件，再整体移动覆盖，多个进程同时启动也不会读到
+ * 写了一半的文件。
+ */
+class CalibratedAddFactory extends IFactory{
+    // 实测所用的列长度
+    private static final int CALIBRATION_LENGTH = 4096;
+    // 每轮实测的运算次数，第一轮只用于预热，其余各轮取每个候选的最好成绩
+    private static final int CALIBRATION_CALLS = 2000;
+    private static final int CALIBRATION_ROUNDS = 6;
+    // 非默认候选至少要比默认候选快的比例
+    static final double MIN_MARGIN = 0.10;
+    
+    // 防止实测的运算结果被JIT当作无用代码消除
+    private static volatile long sink;
+    
+    private static final Map<String, Candidate<OperationInt>> INT_KERNELS = new LinkedHashMap<>();
+    private static final Map<String, Candidate<OperationDouble>> DOUBLE_KERNELS = new LinkedHashMap<>();
+    
+    static {
+        INT_KERNELS.put("scalar", new Candidate<>(OperationIntAdd::new, calls -> {
+            OperationIntAdd op = new OperationIntAdd();
+            int[] a = CalibrationData.INT_A, b = CalibrationData.INT_B, out = new int[CALIBRATION_LENGTH];
+            long start = System.nanoTime();
+            for(int i = 0; i < calls; i++) {
+                op.result(a, b, out);
+            }
+            long nanos = System.nanoTime() - start;
+            sink += out[CALIBRATION_LENGTH - 1];
+            return nanos;
+        }));
+        INT_KERNELS.put("unrolled", new Candidate<>(OperationIntAddUnrolled::new, calls -> {
+            OperationIntAddUnrolled op = new OperationIntAddUnrolled();
+            int[] a = CalibrationData.INT_A, b = CalibrationData.INT_B, out = new int[CALIBRATION_LENGTH];
+            long start = System.nanoTime();
+            for(int i = 0; i < calls; i++) {
+                op.result(a, b, out);
+            }
+            long nanos = System.nanoTime() - start;
+            sink += out[CALIBRATION_LENGTH - 1];
+            return nanos;
+        }));
+        DOUBLE_KERNELS.put("scalar", new Candidate<>(OperationDoubleAdd::new, calls -> {
+            OperationDoubleAdd op = new OperationDoubleAdd();
+            double[] a = CalibrationData.DOUBLE_A, b = CalibrationData.DOUBLE_B;
+            double[] out = new double[CALIBRATION_LENGTH];
+            long start = System.nanoTime();
+            for(int i = 0; i < calls; i++) {
+                op.result(a, b, out);
+            }
+            long nanos = System.nanoTime() - start;
+            sink += (long) out[CALIBRATION_LENGTH - 1];
+            return nanos;
+        }));
+        DOUBLE_KERNELS.put("unrolled", new Candidate<>(OperationDoubleAddUnrolled::new, calls -> {
+            OperationDoubleAddUnrolled op = new OperationDoubleAddUnrolled();
+            double[] a = CalibrationData.DOUBLE_A, b = CalibrationData.DOUBLE_B;
+            double[] out = new double[CALIBRATION_LENGTH];
+            long start = System.nanoTime();
+            for(int i = 0; i < calls; i++) {
+                op.result(a, b, out);
+            }
+            long nanos = System.nanoTime() - start;
+            sink += (long) out[CALIBRATION_LENGTH - 1];
+            return nanos;
+        }));
+    }
+    
+    private final Supplier<OperationInt> intKernel;
+    private final Supplier<OperationDouble> doubleKernel;
+    
+    public CalibratedAddFactory(Path cacheFile) {
+        Properties cache = new Properties();
+        if(Files.isRegularFile(cacheFile)) {
+            try (InputStream in = Files.newInputStream(cacheFile)) {
+                cache.load(in);
+            } catch (IOException e) {
+                cache.clear();
+            }
+        }
+        String intKey = "add.int." + platform();
+        String doubleKey = "add.double." + platform();
+        String intChoice = cache.getProperty(intKey);
+        String doubleChoice = cache.getProperty(doubleKey);
+        boolean calibrated = false;
+        if(!INT_KERNELS.containsKey(intChoice)) {
+            intChoice = fastest(INT_KERNELS);
+            cache.setProperty(intKey, intChoice);
+            calibrated = true;
+        }
+        if(!DOUBLE_KERNELS.containsKey(doubleChoice)) {
+            doubleChoice = fastest(DOUBLE_KERNELS);
+            cache.setProperty(doubleKey, doubleChoice);
+            calibrated = true;
+        }
+        if(calibrated) {
+            store(cache, cacheFile);
+        }
+        this.intKernel = INT_KERNELS.get(intChoice).kernel;
+        this.doubleKernel = DOUBLE_KERNELS.get(doubleChoice).kernel;
+    }
+    
+    // 缓存记录所对应的JVM和CPU
+    static String platform() {
+        return System.getProperty("java.vm.name") + "/" + System.getProperty("java.vm.version")
+                + "/" + System.getProperty("os.arch") + "/" + Runtime.getRuntime().availableProcessors();
+    }
+    
+    // 各候选按轮交替实测，返回选中的实现名称
+    private static <T> String fastest(Map<String, Candidate<T>> kernels) {
+        List<Candidate<T>> candidates = new ArrayList<>(kernels.values());
+        long[] best = new long[candidates.size()];
+        Arrays.fill(best, Long.MAX_VALUE);
+        for(int round = 0; round < CALIBRATION_ROUNDS; round++) {
+            for(int k = 0; k < best.length; k++) {
+                long nanos = candidates.get(k).timer.applyAsLong(CALIBRATION_CALLS);
+                if(round > 0 && nanos < best[k]) {
+                    best[k] = nanos;
+                }
+            }
+        }
+        return new ArrayList<>(kernels.keySet()).get(choose(best, MIN_MARGIN));
+    }
+    
+    /**
+     * 根据各候选的最好耗时选择实现，下标0为默认候选。最快的非默认候选比
+     * 默认候选快margin以上时返回它的下标，否则返回0。
+     */
+    static int choose(long[] nanos, double margin) {
+        int fastest = 0;
+        for(int k = 1; k < nanos.length; k++) {
+            if(nanos[k] < nanos[fastest]) {
+                fastest = k;
+            }
+        }
+        return nanos[fastest] < nanos[0] * (1 - margin) ? fastest : 0;
+    }
+    
+    // 先写同目录下的临时文件再移动覆盖缓存文件，文件系统不支持原子移动时退回普通覆盖
+    private static void store(Properties cache, Path cacheFile) {
+        Path dir = cacheFile.toAbsolutePath().getParent();
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(dir, cacheFile.getFileName().toString(), ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                cache.store(out, "CalibratedAddFactory kernel choices");
+            }
+            try {
+                Files.move(tmp, cacheFile, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            // 写缓存失败时下次启动重新实测即可
+        } finally {
+            if(tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException e) {
+                    // 临时文件留在原处不影响缓存
+                }
+            }
+        }
+    }
+    
+    // 候选实现及其专用的计时循环，计时循环接收运算次数，返回耗时纳秒数
+    private static final class Candidate<T>{
+        final Supplier<T> kernel;
+        final IntToLongFunction timer;
+        
+        Candidate(Supplier<T> kernel, IntToLongFunction timer) {
+            this.kernel = kernel;
+            this.timer = timer;
+        }
+    }
+    
+    // 实测输入数据，只在需要实测时才初始化
+    private static final class CalibrationData{
+        static final int[] INT_A = new int[CALIBRATION_LENGTH];
+        static final int[] INT_B = new int[CALIBRATION_LENGTH];
+        static final double[] DOUBLE_A = new double[CALIBRATION_LENGTH];
+        static final double[] DOUBLE_B = new double[CALIBRATION_LENGTH];
+        
+        static {
+            Arrays.fill(INT_A, 1);
+            Arrays.fill(INT_B, 2);
+            Arrays.fill(DOUBLE_A, 1.0);
+            Arrays.fill(DOUBLE_B, 2.0);
+        }
+    }
+    
+    @Override
+    public OperationInt createOperationInt() {
+        return intKernel.get();
+    }
+    @Override
+    public OperationDouble createOperationDouble() {
+        return doubleKernel.get();
+    }
+    @Override
+    public OperationLong createOperationLong() {
+        return new OperationLongAdd();
+    }
+    @Override
+    public OperationFloat createOperationFloat() {
+        return new OperationFloatAdd();
+    }
 }
 
 /**
  * 抽象产品类
  * 定义抽象产品方法。
  * 下例是int类型运算产品的抽象类。
+ * 整列运算方法对a,b的每一对元素运算后写入out的相同位置，默认实现逐个调用
+ * 单个运算方法，具体产品可以重写为紧凑循环。
  */
 abstract class OperationInt{
     public abstract int result(int a, int b);
+    public void result(int[] a, int[] b, int[] out) {
+        checkColumns(a.length, b.length, out.length);
+        for(int i = 0; i < a.length; i++) {
+            out[i] = result(a[i], b[i]);
+        }
+    }
+    
+    // 检查整列运算的列长度，a与b等长，out不短于a
+    static void checkColumns(int aLength, int bLength, int outLength) {
+        if(aLength != bLength || outLength < aLength) {
+            throw new IllegalArgumentException("列长度不一致。");
+        }
+    }
 }
 
 /**
@@ -78,6 +360,40 @@ abstract class OperationInt{
  */
 abstract class OperationDouble{
     public abstract double result(double a, double b);
+    public void result(double[] a, double[] b, double[] out) {
+        OperationInt.checkColumns(a.length, b.length, out.length);
+        for(int i = 0; i < a.length; i++) {
+            out[i] = result(a[i], b[i]);
+        }
+    }
+}
+
+/**
+ * 抽象产品类
+ * 下例是long类型运算产品的抽象类。
+ */
+abstract class OperationLong{
+    public abstract long result(long a, long b);
+    public void result(long[] a, long[] b, long[] out) {
+        OperationInt.checkColumns(a.length, b.length, out.length);
+        for(int i = 0; i < a.length; i++) {
+            out[i] = result(a[i], b[i]);
+        }
+    }
+}
+
+/**
+ * 抽象产品类
+ * 下例是float类型运算产品的抽象类。
+ */
+abstract class OperationFloat{
+    public abstract float result(float a, float b);
+    public void result(float[] a, float[] b, float[] out) {
+        OperationInt.checkColumns(a.length, b.length, out.length);
+        for(int i = 0; i < a.length; i++) {
+            out[i] = result(a[i], b[i]);
+        }
+    }
 }
 
 /**
@@ -90,6 +406,13 @@ class OperationIntAdd extends OperationInt {
     public int result(int a, int b) {
         return a + b;
     }
+    @Override
+    public void result(int[] a, int[] b, int[] out) {
+        checkColumns(a.length, b.length, out.length);
+        for(int i = 0; i < a.length; i++) {
+            out[i] = a[i] + b[i];
+        }
+    }
 }
 
 /**
@@ -101,4 +424,99 @@ class OperationDoubleAdd extends OperationDouble {
     public double result(double a, double b) {
         return a + b;
     }
+    @Override
+    public void result(double[] a, double[] b, double[] out) {
+        OperationInt.checkColumns(a.length, b.length, out.length);
+        for(int i = 0; i < a.length; i++) {
+            out[i] = a[i] + b[i];
+        }
+    }
+}
+
+/**
+ * 具体产品类
+ * 下例是long加法类。
+ */
+class OperationLongAdd extends OperationLong {
+    @Override
+    public long result(long a, long b) {
+        return a + b;
+    }
+    @Override
+    public void result(long[] a, long[] b, long[] out) {
+        OperationInt.checkColumns(a.length, b.length, out.length);
+        for(int i = 0; i < a.length; i++) {
+            out[i] = a[i] + b[i];
+        }
+    }
+}
+
+/**
+ * 具体产品类
+ * 下例是float加法类。
+ */
+class OperationFloatAdd extends OperationFloat {
+    @Override
+    public float result(float a, float b) {
+        return a + b;
+    }
+    @Override
+    public void result(float[] a, float[] b, float[] out) {
+        OperationInt.checkColumns(a.length, b.length, out.length);
+        for(int i = 0; i < a.length; i++) {
+            out[i] = a[i] + b[i];
+        }
+    }
+}
+
+/**
+ * 具体产品类
+ * 下例是int加法类的循环展开版本，每次迭代处理4个元素。
+ */
+class OperationIntAddUnrolled extends OperationInt {
+    @Override
+    public int result(int a, int b) {
+        return a + b;
+    }
+    @Override
+    public void result(int[] a, int[] b, int[] out) {
+        checkColumns(a.length, b.length, out.length);
+        int n = a.length;
+        int i = 0;
+        for(; i + 3 < n; i += 4) {
+            out[i] = a[i] + b[i];
+            out[i + 1] = a[i + 1] + b[i + 1];
+            out[i + 2] = a[i + 2] + b[i + 2];
+            out[i + 3] = a[i + 3] + b[i + 3];
+        }
+        for(; i < n; i++) {
+            out[i] = a[i] + b[i];
+        }
+    }
+}
+
+/**
+ * 具体产品类
+ * 下例是double加法类的循环展开版本，每次迭代处理4个元素。
+ */
+class OperationDoubleAddUnrolled extends OperationDouble {
+    @Override
+    public double result(double a, double b) {
+        return a + b;
+    }
+    @Override
+    public void result(double[] a, double[] b, double[] out) {
+        OperationInt.checkColumns(a.length, b.length, out.length);
+        int n = a.length;
+        int i = 0;
+        for(; i + 3 < n; i += 4) {
+            out[i] = a[i] + b[i];
+            out[i + 1] = a[i + 1] + b[i + 1];
+            out[i + 2] = a[i + 2] + b[i + 2];
+            out[i + 3] = a[i + 3] + b[i + 3];
+        }
+        for(; i < n; i++) {
+            out[i] = a[i] + b[i];
+        }
+    }
 }
@@ -1,7 +1,32 @@
 package com.yukiyama.designpattern.creation;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 
 /**
  * 建造者模式(生成器模式)
@@ -25,19 +50,40 @@ import java.util.List;
  * 具体建造者作为指挥者的produce方法参数，指挥者执行其produce完成建造。
  * 执行后需要查看得到的产品细节，再调用产品建造者的getProduce方法即可。
  * 
+ * 建造者提供reset方法，建造完成并取走产品后调用reset即可开始建造下一个
+ * 产品，同一个建造者可以反复使用。部件名称统一登记在所有产品共享的部件字典
+ * PartDictionary中，每个名称只保存一次并对应一个编号，产品中只以short数组
+ * 保存部件编号，展示时才查字典得到名称，大量建造时占用的内存更少。
+ * 
+ * 当各部件的建造耗时较长且相互独立时，可以使用并发指挥者AsyncDirector。
+ * 它按声明的依赖关系，把互不依赖的建造步骤提交到线程池并发执行，每个步骤
+ * 由各自的建造者实例完成，最后按步骤的固定顺序把部件组装进同一个产品，
+ * 因此产品中部件的顺序与顺序指挥者建造的结果一致。
+ * 
+ * 建造好的产品可以编码为紧凑的二进制记录，由CarStoreWriter追加到内存映射
+ * 的文件中，再由CarStoreReader逐条读取。读取时只在需要时才还原为产品对象。
+ * 部件编号只在本进程的部件字典中有效，因此文件末尾附带写入时的部件名称表，
+ * 读取时按名称查出读取进程自己的编号。
+ * 
  * 本示例以汽车生产为例，展示如何利用建造者模式来生产F1赛车和普通家用汽车。
  * 
  * 结构
  * 指挥者类
  *   提供一个指挥生产的方法produce，传入建造者，其内调用建造者的建造方法。
+ * 并发指挥者类
+ *   按步骤间的依赖关系并发执行建造步骤，组装后返回产品。
  * 抽象建造者类
- *   提供建造产品各部件的抽象方法和一个返回产品的方法。
+ *   提供建造产品各部件的抽象方法、一个返回产品的方法和一个重置方法。
  * 具体建造者类
  *   继承抽象建造者类，并持有一个产品实例以供获取。实现产品各部分抽象建造
  *   方法和返回产品的抽象方法。
  * 产品类
  *   持有产品各部件的一个集合实例，有一个增加部件的add方法，一个用于展现
  *   组成部件的show方法。
+ * 部件字典
+ *   为部件名称分配编号，产品按编号保存部件。
+ * 部件枚举
+ *   列出常用部件，枚举序号即该部件在字典中的编号。
  */
 public class BuilderDemo {
 
@@ -52,6 +98,36 @@ public class BuilderDemo {
         Car car = carMaker.getCar();
         // 产品调用show方法展示建造后的产品细节
         car.show();
+        // 重置建造者后继续建造下一辆车，之前取走的产品不受影响
+        carMaker.reset();
+        director.produce(carMaker);
+        // 输出“true”
+        System.out.println(carMaker.getCar() != car);
+        // 声明一个并发指挥者，引擎的建造依赖轮胎，座椅与二者无关
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        AsyncDirector asyncDirector = new AsyncDirector(executor)
+                .dependsOn(BuildStep.ENGINE, BuildStep.WHEELS);
+        // 并发建造后得到的部件顺序与顺序指挥者一致，输出“[家用车轮胎, 家用车引擎, 家用车座椅]”
+        asyncDirector.produce(HomeCarMaker::new).join().show();
+        executor.shutdown();
+        // 将建造好的产品写入文件后再逐条读出
+        try {
+            Path file = Files.createTempFile("cars", ".bin");
+            try (CarStoreWriter writer = new CarStoreWriter(file)) {
+                writer.append(car);
+                writer.append(carMaker.getCar());
+            }
+            try (CarStoreReader reader = new CarStoreReader(file)) {
+                while(reader.next()) {
+                    // 依次输出“3 赛车轮胎 [赛车轮胎, 赛车引擎, 赛车座椅]”两次
+                    System.out.print(reader.partCount() + " " + reader.partName(0) + " ");
+                    reader.toCar().show();
+                }
+            }
+            Files.delete(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
 }
@@ -69,9 +145,113 @@ class Director{
     }
 }
 
+/**
+ * 建造步骤枚举
+ * 枚举的声明顺序即部件在产品中的顺序，与Director中的建造顺序一致。
+ */
+enum BuildStep{
+    WHEELS {
+        @Override
+        void build(CarMaker cm) {
+            cm.buildWheels();
+        }
+    },
+    ENGINE {
+        @Override
+        void build(CarMaker cm) {
+            cm.buildEngine();
+        }
+    },
+    SEATS {
+        @Override
+        void build(CarMaker cm) {
+            cm.buildSeats();
+        }
+    };
+    
+    abstract void build(CarMaker cm);
+}
+
+/**
+ * 并发指挥者类
+ * 通过dependsOn声明步骤间的依赖关系，未声明依赖的步骤互相独立。produce
+ * 为每个步骤向makers索取一个新的建造者，在所有前置步骤完成后将该步骤提交到
+ * executor执行，全部步骤完成后按BuildStep的顺序组装出产品。由于每个步骤
+ * 使用各自的建造者，建造方法只能向自己的产品添加部件，不能依赖其他步骤留在
+ * 建造者中的状态。executor可以是线程池，也可以是虚拟线程执行器。
+ */
+class AsyncDirector{
+    private final Executor executor;
+    private final Map<BuildStep, Set<BuildStep>> prerequisites = new EnumMap<>(BuildStep.class);
+    
+    public AsyncDirector(Executor executor) {
+        this.executor = executor;
+        for(BuildStep step : BuildStep.values()) {
+            prerequisites.put(step, EnumSet.noneOf(BuildStep.class));
+        }
+    }
+    
+    // 声明step必须在prerequisite完成后才能开始，返回自身以便连续声明
+    public AsyncDirector dependsOn(BuildStep step, BuildStep prerequisite) {
+        if(step == prerequisite || requires(prerequisite, step)) {
+            throw new IllegalArgumentException("建造步骤之间不能循环依赖: " + step + " -> " + prerequisite);
+        }
+        prerequisites.get(step).add(prerequisite);
+        return this;
+    }
+    
+    // step是否直接或间接依赖target
+    private boolean requires(BuildStep step, BuildStep target) {
+        for(BuildStep pre : prerequisites.get(step)) {
+            if(pre == target || requires(pre, target)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    public CompletableFuture<Car> produce(Supplier<? extends CarMaker> makers) {
+        Map<BuildStep, CompletableFuture<Car>> steps = new EnumMap<>(BuildStep.class);
+        for(BuildStep step : BuildStep.values()) {
+            schedule(step, makers, steps);
+        }
+        return CompletableFuture.allOf(steps.values().toArray(new CompletableFuture<?>[0]))
+                .thenApply(v -> {
+                    Car car = new Car();
+                    for(BuildStep step : BuildStep.values()) {
+                        car.addAll(steps.get(step).join());
+                    }
+                    return car;
+                });
+    }
+    
+    // 先安排前置步骤，再在前置步骤全部完成后提交本步骤
+    private CompletableFuture<Car> schedule(BuildStep step, Supplier<? extends CarMaker> makers,
+            Map<BuildStep, CompletableFuture<Car>> steps) {
+        CompletableFuture<Car> scheduled = steps.get(step);
+        if(scheduled != null) {
+            return scheduled;
+        }
+        Set<BuildStep> pres = prerequisites.get(step);
+        CompletableFuture<?>[] waits = new CompletableFuture<?>[pres.size()];
+        int i = 0;
+        for(BuildStep pre : pres) {
+            waits[i++] = schedule(pre, makers, steps);
+        }
+        scheduled = CompletableFuture.allOf(waits).thenApplyAsync(v -> {
+            CarMaker cm = makers.get();
+            step.build(cm);
+            return cm.getCar();
+        }, executor);
+        steps.put(step, scheduled);
+        return scheduled;
+    }
+}
+
 /**
  * 抽象建造者类
- * 提供建造产品各部件的抽象方法和一个返回产品的方法。
+ * 提供建造产品各部件的抽象方法和一个返回产品的方法。reset方法丢弃当前
+ * 持有的产品并准备一个新产品，已通过getCar取走的产品不受影响。
  * 下例为一个抽象汽车制造者类。
  */
 abstract class CarMaker{
@@ -79,6 +259,7 @@ abstract class CarMaker{
     public abstract void buildEngine();
     public abstract void buildSeats();
     public abstract Car getCar();
+    public abstract void reset();
 }
 
 /**
@@ -92,20 +273,24 @@ class F1CarMaker extends CarMaker{
     
     @Override
     public void buildWheels() {
-        car.add("赛车轮胎");
+        car.add(CarPart.RACING_WHEELS);
     }
     @Override
     public void buildEngine() {
-        car.add("赛车引擎");
+        car.add(CarPart.RACING_ENGINE);
     }
     @Override
     public void buildSeats() {
-        car.add("赛车座椅");
+        car.add(CarPart.RACING_SEATS);
     }
     @Override
     public Car getCar() {
         return car;
     }
+    @Override
+    public void reset() {
+        car = new Car();
+    }
 }
 
 /**
@@ -118,35 +303,425 @@ class HomeCarMaker extends CarMaker{
     
     @Override
     public void buildWheels() {
-        car.add("家用车轮胎");
+        car.add(CarPart.HOME_WHEELS);
     }
     @Override
     public void buildEngine() {
-        car.add("家用车引擎");
+        car.add(CarPart.HOME_ENGINE);
     }
     @Override
     public void buildSeats() {
-        car.add("家用车座椅");
+        car.add(CarPart.HOME_SEATS);
     }
     @Override
     public Car getCar() {
         return car;
     }
+    @Override
+    public void reset() {
+        car = new Car();
+    }
 }
 
 /**
  * 要建造的产品类
- * 持有产品各部件的集合List<String>，定义一个add方法用于添加构件。另定义
- * 一个show方法用于展示建造的产品细节。
+ * 以short数组保存各部件在部件字典中的编号，定义add方法用于添加构件。另定义
+ * 一个show方法用于展示建造的产品细节，getParts方法按需查字典返回部件名称
+ * 列表。二进制编码为1字节部件数(最多255个)加上每个部件2字节的编号，编号
+ * 是本进程部件字典中的编号，跨进程读取时需要按写入方的名称表换算，见
+ * CarStoreWriter。
  */
 class Car{
-    private List<String> parts = new ArrayList<>();
+    // 常见的汽车由轮胎、引擎、座椅三个部件构成
+    private static final int INITIAL_CAPACITY = 3;
     
+    // 二进制编码中部件数只占1字节
+    private static final int MAX_ENCODED_PARTS = 255;
+    // 二进制编码中每个部件编号的字节数
+    static final int PART_BYTES = 2;
+    
+    private short[] parts = new short[INITIAL_CAPACITY];
+    private int size;
+    
+    public void add(CarPart part) {
+        addId(part.getId());
+    }
+    // 添加任意名称的部件，名称首次出现时登记到部件字典
     public void add(String part) {
-        parts.add(part);
+        addId(PartDictionary.intern(part));
+    }
+    private void addId(short id) {
+        if(size == parts.length) {
+            parts = Arrays.copyOf(parts, size * 2);
+        }
+        parts[size++] = id;
+    }
+    // 将另一个产品的全部部件按顺序追加到本产品
+    public void addAll(Car other) {
+        if(size + other.size > parts.length) {
+            parts = Arrays.copyOf(parts, Math.max(size + other.size, size * 2));
+        }
+        System.arraycopy(other.parts, 0, parts, size, other.size);
+        size += other.size;
+    }
+    public List<String> getParts() {
+        List<String> names = new ArrayList<>(size);
+        for(int i = 0; i < size; i++) {
+            names.add(PartDictionary.name(parts[i]));
+        }
+        return names;
     }
     public void show() {
-        System.out.println(parts);
+        System.out.println(getParts());
+    }
+    // 编码后的字节数
+    public int encodedSize() {
+        return 1 + size * PART_BYTES;
+    }
+    // 将产品编码写入buffer，buffer的position前移encodedSize()
+    public void writeTo(ByteBuffer buffer) {
+        if(size > MAX_ENCODED_PARTS) {
+            throw new IllegalStateException("部件数超出编码上限: " + size);
+        }
+        if(buffer.remaining() < encodedSize()) {
+            throw new BufferOverflowException();
+        }
+        buffer.put((byte) size);
+        for(int i = 0; i < size; i++) {
+            buffer.putShort(parts[i]);
+        }
+    }
+    // 从buffer读取一条本进程写入的编码并还原为产品
+    public static Car readFrom(ByteBuffer buffer) {
+        return readFrom(buffer, null);
+    }
+    // 从buffer读取一条编码，编码中的编号x换算为idMap[x]
+    static Car readFrom(ByteBuffer buffer, short[] idMap) {
+        int count = buffer.get() & 0xFF;
+        Car car = new Car();
+        if(count > car.parts.length) {
+            car.parts = new short[count];
+        }
+        for(int i = 0; i < count; i++) {
+            short id = buffer.getShort();
+            car.parts[i] = idMap == null ? id : CarStoreReader.localId(idMap, id);
+        }
+        car.size = count;
+        return car;
+    }
+    // 部件编号的最大值，没有部件时返回-1
+    int maxPartId() {
+        int max = -1;
+        for(int i = 0; i < size; i++) {
+            max = Math.max(max, parts[i]);
+        }
+        return max;
     }
 }
 
+/**
+ * 产品文件写入器
+ * 将产品编码依次追加到文件中。文件按固定大小的窗口内存映射，当前窗口放不下
+ * 下一条记录时从当前位置映射新的窗口。关闭时将文件截断到实际写入的长度，
+ * 再在记录之后写入部件名称表：4字节名称个数n，接着是编号0到n-1的名称(每个
+ * 名称以DataOutput.writeUTF的格式写入)，最后8字节是名称表在文件中的起始
+ * 位置，即记录部分的长度。名称表只包含到本文件用到的最大编号为止的部分。
+ * 没有正常关闭的文件不含名称表，读取器会拒绝读取。
+ */
+class CarStoreWriter implements Closeable{
+    // 单个映射窗口的字节数
+    static final int SEGMENT_BYTES = 1 << 24;
+    
+    private final FileChannel channel;
+    private MappedByteBuffer segment;
+    private long position;
+    // 已写入的最大部件编号
+    private int maxPartId = -1;
+    
+    public CarStoreWriter(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_BYTES);
+    }
+    
+    public void append(Car car) throws IOException {
+        int n = car.encodedSize();
+        if(segment.remaining() < n) {
+            segment.force();
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, position, SEGMENT_BYTES);
+        }
+        car.writeTo(segment);
+        position += n;
+        maxPartId = Math.max(maxPartId, car.maxPartId());
+    }
+    
+    @Override
+    public void close() throws IOException {
+        try {
+            segment.force();
+            segment = null;
+            channel.truncate(position);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(maxPartId + 1);
+            for(int id = 0; id <= maxPartId; id++) {
+                out.writeUTF(PartDictionary.name(id));
+            }
+            out.writeLong(position);
+            ByteBuffer trailer = ByteBuffer.wrap(bytes.toByteArray());
+            for(long at = position; trailer.hasRemaining(); ) {
+                at += channel.write(trailer, at);
+            }
+        } finally {
+            channel.close();
+        }
+    }
+}
+
+/**
+ * 产品文件读取器
+ * 以游标方式逐条读取产品记录：next()移动到下一条记录，partCount()和
+ * partId(i)直接从映射的文件中读取当前记录，只有调用toCar()时才还原为产品
+ * 对象。遍历过程中不为单条记录创建对象。
+ * 打开文件时把文件末尾的部件名称表读入本读取器自己的名称表，并在本进程
+ * 的部件字典中查找各名称已有的编号，不登记新名称。部件字典容量有限且从不
+ * 删除名称，若打开文件即登记，几个外来或损坏的文件就可能把字典永久占满。
+ * partName直接返回文件中的名称；partId返回本进程的编号，名称尚未登记时
+ * 返回-1；toCar还原产品时才登记该条记录用到的新名称，与在本进程中建造
+ * 同样的产品效果相同。因此可以读取其他进程写入的文件。
+ */
+class CarStoreReader implements Closeable{
+    // 名称表中名称个数和记录部分长度所占的字节数
+    private static final int TRAILER_FIXED_BYTES = 4 + 8;
+    
+    private final FileChannel channel;
+    // 记录部分的长度
+    private final long size;
+    // 下标为文件中的编号，值为文件中的名称
+    private final String[] names;
+    // 下标为文件中的编号，值为本进程部件字典中的编号，尚未登记的名称为-1
+    private final short[] idMap;
+    private MappedByteBuffer segment;
+    // 当前映射窗口在文件中的起始位置
+    private long segmentStart;
+    // 下一条记录在文件中的位置
+    private long position;
+    // 当前记录在映射窗口中的位置及部件数
+    private int recordOffset = -1;
+    private int partCount;
+    
+    public CarStoreReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long fileSize = channel.size();
+            long recordsEnd = fileSize < TRAILER_FIXED_BYTES ? -1 : readFully(fileSize - 8, 8).getLong();
+            if(recordsEnd < 0 || recordsEnd > fileSize - TRAILER_FIXED_BYTES
+                    || fileSize - 8 - recordsEnd > Integer.MAX_VALUE) {
+                throw new IOException("文件末尾没有有效的部件名称表: " + file);
+            }
+            ByteBuffer table = readFully(recordsEnd, (int) (fileSize - 8 - recordsEnd));
+            DataInputStream in = new DataInputStream(
+                    new ByteArrayInputStream(table.array(), 0, table.limit()));
+            int count = in.readInt();
+            if(count < 0 || count > Short.MAX_VALUE + 1) {
+                throw new IOException("部件名称表的长度不合法: " + count);
+            }
+            names = new String[count];
+            idMap = new short[count];
+            for(int id = 0; id < count; id++) {
+                names[id] = in.readUTF();
+                idMap[id] = PartDictionary.lookup(names[id]);
+            }
+            size = recordsEnd;
+            map(0);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+    
+    // 从文件的position处读取length个字节
+    private ByteBuffer readFully(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+    
+    // 将文件中的编号换算为本进程的编号，名称尚未登记时为-1
+    static short localId(short[] idMap, short fileId) {
+        checkFileId(idMap.length, fileId);
+        return idMap[fileId];
+    }
+    
+    private static void checkFileId(int count, short fileId) {
+        if(fileId < 0 || fileId >= count) {
+            throw new IllegalStateException("部件编号不在文件的部件名称表中: " + fileId);
+        }
+    }
+    
+    private void map(long start) throws IOException {
+        segmentStart = start;
+        segment = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                Math.min(CarStoreWriter.SEGMENT_BYTES, size - start));
+    }
+    
+    public boolean next() throws IOException {
+        if(position >= size) {
+            recordOffset = -1;
+            return false;
+        }
+        if(position - segmentStart >= segment.limit()) {
+            map(position);
+        }
+        int count = segment.get((int) (position - segmentStart)) & 0xFF;
+        int recordBytes = 1 + count * Car.PART_BYTES;
+        if(position - segmentStart + recordBytes > segment.limit()) {
+            map(position);
+        }
+        recordOffset = (int) (position - segmentStart);
+        partCount = count;
+        position += recordBytes;
+        return true;
+    }
+    
+    public int partCount() {
+        checkRecord();
+        return partCount;
+    }
+    
+    // 当前记录第index个部件在本进程部件字典中的编号，名称尚未登记时为-1
+    public short partId(int index) {
+        return localId(idMap, fileId(index));
+    }
+    
+    public String partName(int index) {
+        short fileId = fileId(index);
+        checkFileId(names.length, fileId);
+        return names[fileId];
+    }
+    
+    // 还原当前记录，先登记记录中尚未登记的名称
+    public Car toCar() {
+        checkRecord();
+        for(int i = 0; i < partCount; i++) {
+            short fileId = fileId(i);
+            if(localId(idMap, fileId) < 0) {
+                idMap[fileId] = PartDictionary.intern(names[fileId]);
+            }
+        }
+        ByteBuffer record = segment.duplicate();
+        record.position(recordOffset);
+        return Car.readFrom(record, idMap);
+    }
+    
+    // 当前记录第index个部件在文件中的编号
+    private short fileId(int index) {
+        checkRecord();
+        if(index < 0 || index >= partCount) {
+            throw new IndexOutOfBoundsException("index: " + index + ", partCount: " + partCount);
+        }
+        return segment.getShort(recordOffset + 1 + index * Car.PART_BYTES);
+    }
+    
+    private void checkRecord() {
+        if(recordOffset < 0) {
+            throw new IllegalStateException("当前没有可读的记录。");
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        segment = null;
+        channel.close();
+    }
+}
+
+/**
+ * 部件字典
+ * 所有产品共享的部件名称表，每个名称只登记一次并分配一个从0开始递增的编号。
+ * 部件枚举的名称在字典初始化时按枚举顺序最先登记，因此其编号等于枚举序号。
+ * 按编号查名称时读取写时复制的名称数组，无需加锁。
+ */
+class PartDictionary{
+    // 编号以short保存
+    private static final int MAX_SIZE = Short.MAX_VALUE + 1;
+    
+    private static final Map<String, Short> IDS = new ConcurrentHashMap<>();
+    private static volatile String[] names = new String[0];
+    
+    static {
+        for(CarPart part : CarPart.values()) {
+            intern(part.getLabel());
+        }
+    }
+    
+    private PartDictionary() {}
+    
+    // 返回名称对应的编号，名称首次出现时为其分配新编号
+    public static short intern(String name) {
+        Short id = IDS.get(name);
+        if(id != null) {
+            return id;
+        }
+        synchronized (PartDictionary.class) {
+            id = IDS.get(name);
+            if(id == null) {
+                String[] table = names;
+                if(table.length == MAX_SIZE) {
+                    throw new IllegalStateException("部件字典已满。");
+                }
+                table = Arrays.copyOf(table, table.length + 1);
+                table[table.length - 1] = name;
+                names = table;
+                id = (short) (table.length - 1);
+                IDS.put(name, id);
+            }
+            return id;
+        }
+    }
+    
+    // 返回已登记名称的编号，未登记时返回-1，不登记新名称
+    public static short lookup(String name) {
+        Short id = IDS.get(name);
+        return id == null ? -1 : id;
+    }
+    
+    public static String name(int id) {
+        return names[id];
+    }
+    
+    // 已登记的名称个数
+    public static int size() {
+        return names.length;
+    }
+}
+
+/**
+ * 部件枚举
+ * 列出常用部件及其名称，枚举序号即该部件在部件字典中的编号。
+ */
+enum CarPart{
+    RACING_WHEELS("赛车轮胎"),
+    RACING_ENGINE("赛车引擎"),
+    RACING_SEATS("赛车座椅"),
+    HOME_WHEELS("家用车轮胎"),
+    HOME_ENGINE("家用车引擎"),
+    HOME_SEATS("家用车座椅");
+    
+    private final String label;
+    
+    CarPart(String label) {
+        this.label = label;
+    }
+    public String getLabel() {
+        return label;
+    }
+    public short getId() {
+        return (short) ordinal();
+    }
+}
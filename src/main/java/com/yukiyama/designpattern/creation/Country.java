@@ -0,0 +1,16 @@
+package com.yukiyama.designpattern.creation;
+
+/**
+ * 浅拷贝版
+ * 自定义不变类，用于演示在浅拷贝中对不变类的拷贝结果
+ */
+class Country{
+    private final String countryName;
+    
+    public Country(String countryName) {
+        this.countryName = countryName;
+    }
+    public String getCountryName() {
+        return countryName;
+    }
+}
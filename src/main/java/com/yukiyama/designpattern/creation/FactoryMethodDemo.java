@@ -1,5 +1,19 @@
 package com.yukiyama.designpattern.creation;
 
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+import com.yukiyama.designpattern.creation.index.IndexedFactory;
+
 /**
  * 工厂方法模式
  * 在简单工厂模式中，当出现产品类的增删改时，均需要修改静态产品工厂类内的
@@ -12,6 +26,18 @@ package com.yukiyama.designpattern.creation;
  * 本示例以四则运算为例，演示客户端如何声明一个具体的运算工厂并通过该工厂
  * 生产相应的运算产品，然后执行该产品的产品方法(执行运算)返回结果。
  * 
+ * 工厂生产的运算产品还可以作为归约运算的合并函数。OperReducer接收任意
+ * 运算工厂，用其产品对int数组做折叠。产品通过isAssociative声明自己是否
+ * 满足结合律，满足结合律的运算(加法、乘法)在fork-join线程池中并行折叠，
+ * 不满足的(减法、除法)退回到从左到右的顺序折叠。
+ * 需要按名称(运算符)选择工厂时，OperFactoryIndex以构造器引用建立运算符到
+ * 工厂的索引，运行时无需扫描类路径或反射加载类。具体工厂类标注
+ * @IndexedFactory，索引由FactoryIndexProcessor在编译期生成，新增工厂时
+ * 只需标注新类，不必修改索引。
+ * 若具体产品类要到运行时(例如读取配置后)才能确定，OperFactoryBinder通过
+ * LambdaMetafactory将产品的无参构造器绑定成工厂，绑定后的工厂与直接new
+ * 产品的速度相当，不必每次都反射调用newInstance。
+ * 
  * 结构
  * 抽象工厂类
  *   定义一个创建产品的抽象方法。
@@ -31,6 +57,16 @@ public class FactoryMethodDemo {
         Oper oper = fa.createOper();
         // 执行产品的运算方法得到结果，输出“7”
         System.out.println(oper.result(3, 4));
+        int[] values = {1, 2, 3, 4, 5};
+        // 以加法产品并行归约数组，输出“15”
+        System.out.println(OperReducer.reduce(new AddFactory(), values, 2, ForkJoinPool.commonPool()));
+        // 减法不满足结合律，顺序归约 ((((1-2)-3)-4)-5)，输出“-13”
+        System.out.println(OperReducer.reduce(new SubFactory(), values, 2, ForkJoinPool.commonPool()));
+        // 按运算符从索引中获取工厂，输出“12”
+        System.out.println(OperFactoryIndex.get("*").createOper().result(3, 4));
+        // 运行时将产品类绑定成工厂，输出“-1”
+        OperFactory fs = OperFactoryBinder.bind(OperSub.class);
+        System.out.println(fs.createOper().result(3, 4));
     }
 
 }
@@ -48,6 +84,7 @@ abstract class OperFactory{
  * 继承抽象工厂类，实现创建产品的抽象方法。
  * 下例是加法工厂。
  */
+@IndexedFactory(value = "+", base = OperFactory.class)
 class AddFactory extends OperFactory{
     @Override
     public Oper createOper() {
@@ -59,6 +96,7 @@ class AddFactory extends OperFactory{
  * 具体工厂类
  * 下例是减法工厂。
  */
+@IndexedFactory(value = "-", base = OperFactory.class)
 class SubFactory extends OperFactory{
     @Override
     public Oper createOper() {
@@ -69,6 +107,7 @@ class SubFactory extends OperFactory{
 /**
  * 下例是乘法工厂
  */
+@IndexedFactory(value = "*", base = OperFactory.class)
 class MulFactory extends OperFactory{
     @Override
     public Oper createOper() {
@@ -79,6 +118,7 @@ class MulFactory extends OperFactory{
 /**
  * 下例是除法工厂
  */
+@IndexedFactory(value = "/", base = OperFactory.class)
 class DivFactory extends OperFactory{
     @Override
     public Oper createOper() {
@@ -86,6 +126,97 @@ class DivFactory extends OperFactory{
     }
 }
 
+/**
+ * 工厂索引
+ * 以运算符为键，保存各具体工厂的构造器引用。初始内容来自编译期生成的
+ * OperFactoryGeneratedIndex，即所有标注了@IndexedFactory的工厂类，查找时
+ * 不涉及类路径扫描和Class.forName。
+ * 生成的索引只包含与注解处理器一起编译的工厂，单独编译的插件中的工厂
+ * 不会自动出现在索引里，须由插件在启动时调用register登记。没有登记的
+ * 运算符get返回null，不会退回到扫描类路径。
+ */
+class OperFactoryIndex{
+    private static final Map<String, Supplier<OperFactory>> FACTORIES =
+            new ConcurrentHashMap<>(OperFactoryGeneratedIndex.factories());
+    
+    private OperFactoryIndex() {}
+    
+    // 登记运算符对应的工厂构造器，已存在的运算符会被覆盖
+    public static void register(String key, Supplier<OperFactory> constructor) {
+        if(key == null || constructor == null) {
+            throw new IllegalArgumentException("运算符和工厂构造器不能为空。");
+        }
+        FACTORIES.put(key, constructor);
+    }
+    
+    // 根据运算符返回一个新的工厂实例，未登记的运算符返回null
+    public static OperFactory get(String key) {
+        Supplier<OperFactory> constructor = FACTORIES.get(key);
+        return constructor == null ? null : constructor.get();
+    }
+}
+
+/**
+ * 工厂绑定器
+ * 通过LambdaMetafactory为具体产品类的无参构造器生成一个Supplier实现类，
+ * 再包装成具体工厂。产品类的无参构造器需要对本包可见，抽象类和接口不能
+ * 绑定。每个产品类只生成一次，绑定结果缓存在ClassValue中，随产品类一起
+ * 被回收，重复bind同一个类返回同一个工厂。
+ */
+class OperFactoryBinder{
+    private static final ClassValue<OperFactory> FACTORIES = new ClassValue<OperFactory>() {
+        @Override
+        protected OperFactory computeValue(Class<?> type) {
+            return generate(type);
+        }
+    };
+    
+    private OperFactoryBinder() {}
+    
+    public static OperFactory bind(Class<? extends Oper> type) {
+        if(type == null) {
+            throw new IllegalArgumentException("产品类不能为空。");
+        }
+        return FACTORIES.get(type);
+    }
+    
+    private static OperFactory generate(Class<?> type) {
+        if(type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+            throw new IllegalArgumentException("抽象类和接口不能绑定成工厂: " + type.getName());
+        }
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            MethodHandle constructor = lookup.findConstructor(type, MethodType.methodType(void.class));
+            CallSite site = LambdaMetafactory.metafactory(lookup, "get",
+                    MethodType.methodType(Supplier.class), MethodType.methodType(Object.class),
+                    constructor, MethodType.methodType(type));
+            @SuppressWarnings("unchecked")
+            Supplier<Oper> supplier = (Supplier<Oper>) site.getTarget().invokeExact();
+            return new SupplierOperFactory(supplier);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalArgumentException("无法绑定产品类的无参构造器: " + type.getName(), e);
+        }
+    }
+}
+
+/**
+ * 具体工厂类
+ * 由绑定器生成，通过持有的Supplier生产产品。
+ */
+class SupplierOperFactory extends OperFactory{
+    private final Supplier<Oper> supplier;
+    
+    public SupplierOperFactory(Supplier<Oper> supplier) {
+        this.supplier = supplier;
+    }
+    @Override
+    public Oper createOper() {
+        return supplier.get();
+    }
+}
+
 /**
  * 抽象产品类
  * 定义抽象产品方法。
@@ -93,6 +224,10 @@ class DivFactory extends OperFactory{
  */
 abstract class Oper{
     public abstract int result(int a, int b);
+    // 是否满足结合律，即(a op b) op c == a op (b op c)，默认不满足
+    public boolean isAssociative() {
+        return false;
+    }
 }
 
 /**
@@ -105,6 +240,10 @@ class OperAdd extends Oper{
     public int result(int a, int b) {
         return a + b;
     }
+    @Override
+    public boolean isAssociative() {
+        return true;
+    }
 }
 
 /**
@@ -127,6 +266,10 @@ class OperMul extends Oper{
     public int result(int a, int b) {
         return a * b;
     }
+    @Override
+    public boolean isAssociative() {
+        return true;
+    }
 }
 
 /**
@@ -144,3 +287,70 @@ class OperDiv extends Oper{
     }
 }
 
+
+/**
+ * 归约器
+ * 以运算工厂生产的产品作为合并函数折叠int数组。产品满足结合律时，将数组
+ * 不断对半拆分，区间长度不超过threshold后顺序折叠，再两两合并子结果；
+ * 否则整个数组从左到右顺序折叠。
+ */
+class OperReducer{
+    private OperReducer() {}
+    
+    public static int reduce(OperFactory factory, int[] values, int threshold, ForkJoinPool pool) {
+        if(values.length == 0) {
+            throw new IllegalArgumentException("数组不能为空。");
+        }
+        if(threshold <= 0) {
+            throw new IllegalArgumentException("顺序折叠阈值必须大于0: " + threshold);
+        }
+        Oper oper = factory.createOper();
+        if(!oper.isAssociative() || values.length <= threshold) {
+            return fold(oper, values, 0, values.length);
+        }
+        return pool.invoke(new ReduceTask(oper, values, 0, values.length, threshold));
+    }
+    
+    // 顺序折叠区间[from, to)，区间至少有一个元素
+    private static int fold(Oper oper, int[] values, int from, int to) {
+        int acc = values[from];
+        for(int i = from + 1; i < to; i++) {
+            acc = oper.result(acc, values[i]);
+        }
+        return acc;
+    }
+    
+    /**
+     * 并行归约任务
+     * 左半区间fork出去，当前线程计算右半区间，合并时保持左右顺序。
+     */
+    private static class ReduceTask extends RecursiveTask<Integer>{
+        private static final long serialVersionUID = 1L;
+        
+        private final Oper oper;
+        private final int[] values;
+        private final int from;
+        private final int to;
+        private final int threshold;
+        
+        ReduceTask(Oper oper, int[] values, int from, int to, int threshold) {
+            this.oper = oper;
+            this.values = values;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+        }
+        
+        @Override
+        protected Integer compute() {
+            if(to - from <= threshold) {
+                return fold(oper, values, from, to);
+            }
+            int mid = (from + to) >>> 1;
+            ReduceTask left = new ReduceTask(oper, values, from, mid, threshold);
+            left.fork();
+            int right = new ReduceTask(oper, values, mid, to, threshold).compute();
+            return oper.result(left.join(), right);
+        }
+    }
+}
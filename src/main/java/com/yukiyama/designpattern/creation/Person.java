@@ -0,0 +1,88 @@
+package com.yukiyama.designpattern.creation;
+
+import com.yukiyama.designpattern.creation.copy.CopyPolicy;
+import com.yukiyama.designpattern.creation.copy.CopyPolicy.Policy;
+import com.yukiyama.designpattern.creation.copy.DeepCopyable;
+
+/**
+ * 浅拷贝版
+ * 原型类，实现Cloneable接口并重写clone方法
+ * clone()是浅拷贝，生成的PersonCopier则深拷贝workExperience、共享不变的country。
+ */
+@DeepCopyable
+class Person implements Cloneable, Prototype<Person>{
+    String name;
+    String occupation;
+    int age;
+    @CopyPolicy(Policy.DEEP)
+    WorkExperience workExperience;
+    @CopyPolicy(Policy.SHARED)
+    Country country;
+    
+    // 在构造器中实例化引用类型WorkExperience
+    public Person() {
+        workExperience = new WorkExperience();
+    }
+    
+    // 空白构造器，供生成的PersonCopier使用，workExperience随即被拷贝覆盖，不必分配
+    Person(DeepCopyable.Blank blank) {
+    }
+    
+    public int getAge() {
+        return age;
+    }
+    public void setAge(int age) {
+        this.age = age;
+    }
+    public String getName() {
+        return name;
+    }
+    public void setName(String name) {
+        this.name = name;
+    }
+    public String getOccupation() {
+        return occupation;
+    }
+    public void setOccupation(String occupation) {
+        this.occupation = occupation;
+    }
+    public WorkExperience getWorkExperience() {
+        return workExperience;
+    }
+    public String getCountry() {
+        return country == null ? null : country.getCountryName();
+    }
+    public void setCountry(String countryName) {
+        this.country = new Country(countryName);
+    }
+
+    public void setWorkExperience(String company) {
+        this.workExperience.setCompany(company);
+    }
+    // 重写clone()使得原型类Person能够对外拷贝
+    @Override
+    protected Object clone() {
+        Person person = null;
+        try {
+            person = (Person) super.clone();
+        } catch (CloneNotSupportedException e) {
+            e.printStackTrace();
+        }
+        return person;
+    }
+    @Override
+    public Person copy() {
+        return (Person) clone();
+    }
+    // 批量浅拷贝，整批只进入一次try块
+    @Override
+    public void copyInto(Person[] out, int offset, int count) {
+        try {
+            for(int i = offset, end = offset + count; i < end; i++) {
+                out[i] = (Person) super.clone();
+            }
+        } catch (CloneNotSupportedException e) {
+            e.printStackTrace();
+        }
+    }
+}
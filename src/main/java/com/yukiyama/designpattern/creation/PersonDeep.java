@@ -0,0 +1,114 @@
+package com.yukiyama.designpattern.creation;
+
+import java.io.Serializable;
+
+import com.yukiyama.designpattern.creation.copy.CopyPolicy;
+import com.yukiyama.designpattern.creation.copy.CopyPolicy.Policy;
+import com.yukiyama.designpattern.creation.copy.DeepCopyable;
+
+/**
+ * 深拷贝版
+ * 原型类
+ * 实现Cloneable接口并重写clone方法
+ * 本类中的非不变引用类型字段也通过该字段自身的clone()进行拷贝
+ * 字段对本包可见，供生成的PersonDeepCopier直接读写。
+ * 实现Serializable，以便与序列化往返拷贝的开销对比。
+ */
+@DeepCopyable
+class PersonDeep implements Cloneable, Serializable, Prototype<PersonDeep>{
+    private static final long serialVersionUID = 1L;
+    
+    String name;
+    String occupation;
+    int age;
+    @CopyPolicy(Policy.DEEP)
+    WorkExperienceDeep workExperience;
+    // workExperience是否可能与其他实例共享(延迟深拷贝后为true)，拷贝出的
+    // 实例独占自己的workExperience，因此不拷贝该标记
+    @CopyPolicy(Policy.SKIP)
+    transient boolean workExperienceShared;
+    
+    // 在构造器中实例化引用类型WorkExperience
+    public PersonDeep() {
+        workExperience = new WorkExperienceDeep();
+    }
+    
+    // 空白构造器，供生成的PersonDeepCopier使用，workExperience随即被拷贝覆盖，不必分配
+    PersonDeep(DeepCopyable.Blank blank) {
+    }
+    
+    public int getAge() {
+        return age;
+    }
+    public void setAge(int age) {
+        this.age = age;
+    }
+    public String getName() {
+        return name;
+    }
+    public void setName(String name) {
+        this.name = name;
+    }
+    public String getOccupation() {
+        return occupation;
+    }
+    public void setOccupation(String occupation) {
+        this.occupation = occupation;
+    }
+    // 返回的WorkExperienceDeep可被修改，因此共享时先拷贝
+    public WorkExperienceDeep getWorkExperience() {
+        ownWorkExperience();
+        return workExperience;
+    }
+    // 只读访问，不触发拷贝
+    public String getCompany() {
+        return workExperience.getCompany();
+    }
+    public void setWorkExperienceDeep(String company) {
+        ownWorkExperience();
+        this.workExperience.setCompany(company);
+    }
+    // 写时复制，workExperience仍处于共享状态时拷贝一份归本实例独占
+    private void ownWorkExperience() {
+        if(workExperienceShared) {
+            workExperience = WorkExperienceDeepCopier.copy(workExperience);
+            workExperienceShared = false;
+        }
+    }
+    // 重写clone()使得原型类Person能够执行clone()从而被拷贝
+    @Override
+    protected Object clone() {
+        PersonDeep person = null;
+        try {
+            person = (PersonDeep) super.clone();
+            person.workExperience = (WorkExperienceDeep) workExperience.clone();
+            person.workExperienceShared = false;
+        } catch (CloneNotSupportedException e) {
+            e.printStackTrace();
+        }
+        return person;
+    }
+    @Override
+    public PersonDeep copy() {
+        return (PersonDeep) clone();
+    }
+    // 批量深拷贝，使用生成的拷贝类，无需处理异常
+    @Override
+    public void copyInto(PersonDeep[] out, int offset, int count) {
+        for(int i = offset, end = offset + count; i < end; i++) {
+            out[i] = PersonDeepCopier.copy(this);
+        }
+    }
+    // 延迟深拷贝，拷贝与原型共享workExperience，双方都在第一次修改时才拷贝
+    public PersonDeep cloneLazy() {
+        PersonDeep person = null;
+        try {
+            person = (PersonDeep) super.clone();
+            person.workExperienceShared = true;
+            workExperienceShared = true;
+        } catch (CloneNotSupportedException e) {
+            e.printStackTrace();
+        }
+        return person;
+    }
+}
@@ -1,5 +1,11 @@
 package com.yukiyama.designpattern.creation;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * 原型模式
  * 需要获取一个类的多个实例的场景下，若该类的构造器需要做较多的初始化工作，
@@ -34,11 +40,32 @@ package com.yukiyama.designpattern.creation;
  * 重写clone方法，且在PersonDeep类的clone方法中，针对非不变引用类型
  * WorkExperienceDeep，执行一条对它的clone方法来得到它的一个实例，从而
  * 实现对PersonDeep的深拷贝。
+ * 深拷贝每次都要拷贝引用类型字段，若拷贝出的实例多数不会修改这些字段，可以
+ * 使用写时复制的延迟深拷贝cloneLazy：拷贝时原型与拷贝共享WorkExperienceDeep，
+ * 任一方第一次修改(或通过getter取出可变的WorkExperienceDeep)时才真正拷贝。
+ * 需要大量拷贝时，可以把原型按名称登记到原型注册表PrototypeRegistry中，
+ * 通过cloneInto一次调用将原型拷贝N份写入调用方提供的数组。
+ * 重写clone()实现深拷贝时容易遗漏字段，且必须处理CloneNotSupportedException。
+ * 本示例的原型类另标注了@DeepCopyable，编译时由注解处理器DeepCopyProcessor
+ * 生成PersonCopier、PersonDeepCopier等类，逐个字段直接赋值完成拷贝，不使用
+ * 反射也不抛出异常。每个字段的拷贝方式由@CopyPolicy指定：不变类型(String和
+ * Country)共享引用，可变的WorkExperience和WorkExperienceDeep拷贝出新实例，
+ * 可变引用类型的字段未指定拷贝方式时编译报错。批量深拷贝也使用生成的代码。
+ * 需要保存海量Person记录时，可以使用堆外存储PersonStore：每条记录占用堆外
+ * 内存中一个定长槽位，字符串字段以字典编号保存，拷贝原型只是复制一个槽位
+ * 的字节，通过享元视图PersonView以与Person相同的getter和setter访问记录。
  * 
  * 结构
  * 原型接口(通常就是Cloneable)
+ *   本示例另定义Prototype接口，提供类型安全的拷贝方法和批量拷贝方法。
  * 具体原型类
  *   实现Cloneable接口并重写clone方法，分为深拷贝和浅拷贝。
+ * 生成的拷贝类
+ *   由注解处理器按字段的拷贝方式生成，提供无反射的拷贝方法。
+ * 原型注册表
+ *   按名称持有原型，提供批量拷贝。
+ * 堆外原型存储
+ *   以定长槽位保存记录，按槽位复制拷贝原型。
  */
 public class ProtoTypeDemo {
 
@@ -70,6 +97,24 @@ public class ProtoTypeDemo {
         // 如下输出“false”，说明p1和p2中的引用类型WorkExperience是不同的实例
         System.out.println(pd1.getWorkExperience() == pd2.getWorkExperience());
         
+        System.out.println("====如下是延迟深拷贝示例====");
+        PersonDeep pd3 = pd1.cloneLazy();
+        // 只读访问不触发拷贝，输出“Alibaba”
+        System.out.println(pd3.getCompany());
+        // 第一次修改时才拷贝WorkExperienceDeep，pd1不受影响，输出“Alibaba”
+        pd3.setWorkExperienceDeep("Tencent");
+        System.out.println(pd1.getCompany());
+        
+        System.out.println("====如下是原型注册表示例====");
+        PrototypeRegistry registry = new PrototypeRegistry();
+        registry.register("programmer", pd1);
+        PersonDeep[] team = new PersonDeep[3];
+        // 一次调用拷贝3份原型写入数组
+        registry.cloneInto("programmer", team, 0, team.length);
+        // 输出“张三”，“false”
+        System.out.println(team[2].getName());
+        System.out.println(team[0].getWorkExperience() == team[1].getWorkExperience());
+        
         System.out.println("====如下是浅拷贝示例====");
         Person p1 = new Person();
         Person p2 = (Person) p1.clone();
@@ -102,175 +147,234 @@ public class ProtoTypeDemo {
         System.out.println(p1.getWorkExperience() == p2.getWorkExperience());
         // 如下输出“false”，说明p1和p2中的引用类型WCountry是不同的实例
         System.out.println(p1.getCountry() == p2.getCountry());
+        // 通过生成的拷贝类得到p1的深拷贝，修改p3不影响p1，输出“false”，“Tsinghua”
+        Person p3 = PersonCopier.copy(p1);
+        p3.setWorkExperience("Baidu");
+        System.out.println(p1.getWorkExperience() == p3.getWorkExperience());
+        System.out.println(p1.getWorkExperience().getCompany());
+        
+        System.out.println("====如下是堆外原型存储示例====");
+        PersonStore store = new PersonStore(1024);
+        int prototype = store.add(p1);
+        // 将原型记录拷贝3份，返回第一份拷贝的下标
+        int first = store.cloneOf(prototype, 3);
+        PersonView view = store.view(first + 1);
+        view.setName("王五");
+        // 输出“王五”，“程序员”，“CHINA”
+        System.out.println(view.getName());
+        System.out.println(view.getOccupation());
+        System.out.println(view.getCountry());
+        // 视图可以移动到其他记录复用，原型记录不受影响，输出“张三”
+        System.out.println(store.view(prototype, view).getName());
     }
 }
 
 /**
- * 深拷贝版
- * 原型类
- * 实现Cloneable接口并重写clone方法
- * 本类中的非不变引用类型字段也通过该字段自身的clone()进行拷贝
+ * 原型注册表
+ * 以Map数据结构按名称持有原型，提供单个拷贝和批量拷贝的方法。
  */
-class PersonDeep implements Cloneable{
-    private String name;
-    private String occupation;
-    private int age;
-    private WorkExperienceDeep workExperience;
+class PrototypeRegistry{
+    private Map<String, Prototype<?>> prototypes = new HashMap<>();
     
-    // 在构造器中实例化引用类型WorkExperience
-    public PersonDeep() {
-        workExperience = new WorkExperienceDeep();
+    public void register(String name, Prototype<?> prototype) {
+        prototypes.put(name, prototype);
     }
     
-    public int getAge() {
-        return age;
+    public <T extends Prototype<T>> T copy(String name, Class<T> type) {
+        return type.cast(lookup(name, type)).copy();
     }
-    public void setAge(int age) {
-        this.age = age;
+    
+    public <T extends Prototype<T>> void cloneInto(String name, T[] out, int offset, int count) {
+        if(offset < 0 || count < 0 || offset + count < 0 || offset + count > out.length) {
+            throw new ArrayIndexOutOfBoundsException("offset: " + offset + ", count: " + count);
+        }
+        @SuppressWarnings("unchecked")
+        T prototype = (T) lookup(name, out.getClass().getComponentType());
+        prototype.copyInto(out, offset, count);
     }
-    public String getName() {
-        return name;
+    
+    // 按名称取出原型，并检查其类型
+    private Prototype<?> lookup(String name, Class<?> type) {
+        Prototype<?> prototype = prototypes.get(name);
+        if(prototype == null) {
+            throw new IllegalArgumentException("无此原型: " + name);
+        }
+        if(!type.isInstance(prototype)) {
+            throw new IllegalArgumentException("原型" + name + "不是" + type.getSimpleName() + "类型。");
+        }
+        return prototype;
     }
-    public void setName(String name) {
-        this.name = name;
+}
+
+/**
+ * 堆外原型存储
+ * 每条Person记录占用堆外内存中一个20字节的定长槽位，依次为name、occupation、
+ * 公司、country的字典编号(-1表示null)和age。字符串在本存储的字典中只保存
+ * 一次，记录本身不含任何对象引用，不会给GC带来负担。槽位按段分配，每段
+ * 是一个直接缓冲区。拷贝原型时只需把原型槽位的字节复制到新槽位。
+ * 本类不是线程安全的。
+ */
+class PersonStore{
+    static final int RECORD_BYTES = 20;
+    static final int NAME = 0;
+    static final int OCCUPATION = 4;
+    static final int COMPANY = 8;
+    static final int COUNTRY = 12;
+    static final int AGE = 16;
+    
+    private final int segmentRecords;
+    private final List<ByteBuffer> segments = new ArrayList<>();
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+    private int size;
+    
+    public PersonStore(int segmentRecords) {
+        if(segmentRecords <= 0 || segmentRecords > Integer.MAX_VALUE / RECORD_BYTES) {
+            throw new IllegalArgumentException("每段记录数不合法: " + segmentRecords);
+        }
+        this.segmentRecords = segmentRecords;
     }
-    public String getOccupation() {
-        return occupation;
+    
+    public int size() {
+        return size;
     }
-    public void setOccupation(String occupation) {
-        this.occupation = occupation;
+    
+    // 追加一条记录，内容取自person，返回记录下标
+    public int add(Person person) {
+        int index = allocate();
+        PersonView view = view(index);
+        view.setName(person.getName());
+        view.setOccupation(person.getOccupation());
+        view.setWorkExperience(person.getWorkExperience().getCompany());
+        view.setCountry(person.getCountry());
+        view.setAge(person.getAge());
+        return index;
+    }
+    
+    // 将原型记录拷贝count份追加到存储末尾，返回第一份拷贝的下标
+    public int cloneOf(int prototype, int count) {
+        checkIndex(prototype);
+        if(count <= 0) {
+            throw new IllegalArgumentException("拷贝份数必须大于0: " + count);
+        }
+        ByteBuffer src = segment(prototype).duplicate();
+        int srcOffset = offset(prototype);
+        src.limit(srcOffset + RECORD_BYTES);
+        int first = size;
+        ByteBuffer dst = null;
+        int dstSegment = -1;
+        for(int i = 0; i < count; i++) {
+            int index = allocate();
+            if(index / segmentRecords != dstSegment) {
+                dstSegment = index / segmentRecords;
+                dst = segments.get(dstSegment).duplicate();
+            }
+            src.position(srcOffset);
+            dst.position(offset(index));
+            dst.put(src);
+        }
+        return first;
     }
-    public WorkExperienceDeep getWorkExperience() {
-        return workExperience;
+    
+    // 返回指向index记录的新视图
+    public PersonView view(int index) {
+        return view(index, new PersonView(this));
     }
-    public void setWorkExperienceDeep(String company) {
-        this.workExperience.setCompany(company);
+    
+    // 将已有视图移动到index记录，遍历时复用同一个视图对象
+    public PersonView view(int index, PersonView reuse) {
+        checkIndex(index);
+        reuse.moveTo(segment(index), offset(index));
+        return reuse;
     }
-    // 重写clone()使得原型类Person能够执行clone()从而被拷贝
-    @Override
-    protected Object clone() {
-        PersonDeep person = null;
-        try {
-            person = (PersonDeep) super.clone();
-            person.workExperience = (WorkExperienceDeep) person.getWorkExperience().clone();
-        } catch (CloneNotSupportedException e) {
-            e.printStackTrace();
+    
+    private int allocate() {
+        if(size == segments.size() * segmentRecords) {
+            segments.add(ByteBuffer.allocateDirect(segmentRecords * RECORD_BYTES));
         }
-        return person;
+        return size++;
     }
-}
-
-/**
- * 深拷贝版
- * 原型类型中的引用类型字段
- */
-class WorkExperienceDeep implements Cloneable{
-    private String company;
-
-    public String getCompany() {
-        return company;
+    
+    private void checkIndex(int index) {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
     }
-    public void setCompany(String company) {
-        this.company = company;
+    
+    private ByteBuffer segment(int index) {
+        return segments.get(index / segmentRecords);
     }
-    @Override
-    protected Object clone() {
-        WorkExperienceDeep we = null;
-        try {
-            we = (WorkExperienceDeep) super.clone();
-        } catch (CloneNotSupportedException e) {
-            e.printStackTrace();
+    
+    private int offset(int index) {
+        return (index % segmentRecords) * RECORD_BYTES;
+    }
+    
+    int encode(String value) {
+        if(value == null) {
+            return -1;
+        }
+        Integer id = ids.get(value);
+        if(id == null) {
+            id = strings.size();
+            strings.add(value);
+            ids.put(value, id);
         }
-        return we;
+        return id;
+    }
+    
+    String decode(int id) {
+        return id < 0 ? null : strings.get(id);
     }
 }
 
 /**
- * 浅拷贝版
- * 原型类，实现Cloneable接口并重写clone方法
+ * 享元视图
+ * 指向PersonStore中的一条记录，提供与Person相同的getter和setter，读写
+ * 直接作用于堆外槽位。通过PersonStore.view(index, reuse)可以移动到其他记录。
  */
-class Person implements Cloneable{
-    private String name;
-    private String occupation;
-    private int age;
-    private WorkExperience workExperience;
-    private Country country;
+class PersonView{
+    private final PersonStore store;
+    private ByteBuffer segment;
+    private int offset;
     
-    // 在构造器中实例化引用类型WorkExperience
-    public Person() {
-        workExperience = new WorkExperience();
+    PersonView(PersonStore store) {
+        this.store = store;
+    }
+    
+    void moveTo(ByteBuffer segment, int offset) {
+        this.segment = segment;
+        this.offset = offset;
     }
     
     public int getAge() {
-        return age;
+        return segment.getInt(offset + PersonStore.AGE);
     }
     public void setAge(int age) {
-        this.age = age;
+        segment.putInt(offset + PersonStore.AGE, age);
     }
     public String getName() {
-        return name;
+        return store.decode(segment.getInt(offset + PersonStore.NAME));
     }
     public void setName(String name) {
-        this.name = name;
+        segment.putInt(offset + PersonStore.NAME, store.encode(name));
     }
     public String getOccupation() {
-        return occupation;
+        return store.decode(segment.getInt(offset + PersonStore.OCCUPATION));
     }
     public void setOccupation(String occupation) {
-        this.occupation = occupation;
-    }
-    public WorkExperience getWorkExperience() {
-        return workExperience;
-    }
-    public String getCountry() {
-        return country.getCountryName();
-    }
-    public void setCountry(String countryName) {
-        this.country = new Country(countryName);
+        segment.putInt(offset + PersonStore.OCCUPATION, store.encode(occupation));
     }
-
-    public void setWorkExperience(String company) {
-        this.workExperience.setCompany(company);
-    }
-    // 重写clone()使得原型类Person能够对外拷贝
-    @Override
-    protected Object clone() {
-        Person person = null;
-        try {
-            person = (Person) super.clone();
-        } catch (CloneNotSupportedException e) {
-            e.printStackTrace();
-        }
-        return person;
-    }
-}
-
-/**
- * 浅拷贝版
- * 原型类型中的引用类型字段
- */
-class WorkExperience{
-    private String company;
-
+    // 对应Person.getWorkExperience().getCompany()
     public String getCompany() {
-        return company;
+        return store.decode(segment.getInt(offset + PersonStore.COMPANY));
     }
-    public void setCompany(String company) {
-        this.company = company;
+    public void setWorkExperience(String company) {
+        segment.putInt(offset + PersonStore.COMPANY, store.encode(company));
     }
-}
-
-/**
- * 浅拷贝版
- * 自定义不变类，用于演示在浅拷贝中对不变类的拷贝结果
- */
-class Country{
-    private String countryName;
-    
-    public Country(String countryName) {
-        this.countryName = countryName;
+    public String getCountry() {
+        return store.decode(segment.getInt(offset + PersonStore.COUNTRY));
     }
-    public String getCountryName() {
-        return countryName;
+    public void setCountry(String countryName) {
+        segment.putInt(offset + PersonStore.COUNTRY, store.encode(countryName));
     }
 }
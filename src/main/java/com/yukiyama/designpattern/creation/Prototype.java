@@ -0,0 +1,15 @@
+package com.yukiyama.designpattern.creation;
+
+/**
+ * 原型接口
+ * copy返回一个类型安全的拷贝，copyInto将原型拷贝count份，写入out的
+ * [offset, offset+count)区间。具体原型类可以重写copyInto批量拷贝。
+ */
+interface Prototype<T>{
+    T copy();
+    default void copyInto(T[] out, int offset, int count) {
+        for(int i = offset, end = offset + count; i < end; i++) {
+            out[i] = copy();
+        }
+    }
+}
@@ -1,5 +1,21 @@
 package com.yukiyama.designpattern.creation;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import com.yukiyama.designpattern.concurrent.StripedCounter;
+
 /**
  * 单例模式
  * 某些场景要求一个对象只能有一个实例，可以通过单例模式实现。由于只能有一个
@@ -19,8 +35,33 @@ package com.yukiyama.designpattern.creation;
  * 懒汉模式因为在调用getInstance时才获得实例，存在多线程竞争的问题，因此可以
  * 结合volatile(避免指令重排)和synchronized(保证原子性)以双锁检测方式将
  * Singleton写成线程安全的类。
+ * 双锁检测的快速路径每次都做一次volatile读，发布实例时做一次volatile写。
+ * 实际只需要"读到引用就能看到构造器中的写入"，即读取用acquire、发布用
+ * release即可。Java 9起可用VarHandle的getAcquire/setRelease表达；本项目
+ * 以Java 8为目标，以AtomicReference的get和lazySet(release写入)实现同样的
+ * 顺序要求，见SingletonAcquireRelease。
+ * 
+ * 此外还有两种常用的线程安全写法。
+ * 静态内部类(Holder)
+ * 实例放在一个私有静态内部类中，内部类只在第一次调用getInstance时加载，
+ * 由JVM的类初始化机制保证只实例化一次，既是懒加载又无需加锁。
+ * 枚举
+ * 只有一个枚举常量的枚举类型，由JVM保证唯一，还能防止通过反射和反序列化
+ * 创建新实例。
  * 
- * 本示例演示饿汉写法，非线程安全懒汉写法和双锁检测线程安全写法。
+ * 分段单例
+ * 单例持有会被频繁修改的状态(如计数器)时，所有线程都修改同一个实例，该实例
+ * 所在的缓存行会成为热点。分段单例按CPU核数预先创建若干个分段实例，线程按
+ * 自身id固定使用其中一个，需要结果时再合并各分段的状态。
+ * 
+ * 单例注册表
+ * 饿汉单例在类加载时就实例化，会拖慢启动。可以把单例的构造交给注册表
+ * SingletonRegistry，由配置决定每个单例是启动时立即构造(eager)、首次使用
+ * 时构造(lazy)还是启动后在后台线程预先构造(background)，注册表同时记录
+ * 每个单例构造的耗时和内存分配量，便于找出拖慢启动的单例。
+ * 
+ * 本示例演示饿汉写法，非线程安全懒汉写法，双锁检测线程安全写法，acquire/
+ * release双锁检测写法，静态内部类写法，枚举写法，分段单例写法和单例注册表。
  * 
  * 结构
  * 单例类
@@ -29,6 +70,22 @@ package com.yukiyama.designpattern.creation;
 public class SingletonDemo {
 
     public static void main(String[] args) {
+        // 单例注册表示例放在最前面：此时SingletonHungry和SingletonHolder都还没有
+        // 被访问过，类初始化尚未发生，注册表才能推迟其构造并计量构造开销
+        // 通过配置把SingletonHungry改为懒加载，SingletonHolder改为后台预热，
+        // 无需修改单例类本身
+        Properties config = new Properties();
+        config.setProperty("hungry", "lazy");
+        config.setProperty("holder", "background");
+        SingletonRegistry registry = new SingletonRegistry(config);
+        registry.register("hungry", SingletonHungry.class, SingletonHungry::getInstance);
+        registry.register("holder", SingletonHolder.class, SingletonHolder::getInstance);
+        // 首次get时才构造SingletonHungry，输出“true”
+        System.out.println(registry.get("hungry", SingletonHungry.class) == SingletonHungry.getInstance());
+        registry.get("holder", SingletonHolder.class);
+        // 输出各单例的初始化方式、耗时和内存分配量
+        registry.printReport();
+        
         SingletonSimple s1 = SingletonSimple.getInstance();
         SingletonSimple s2 = SingletonSimple.getInstance();
         // 输出“true”，说明s1与s2是同一个实例
@@ -39,8 +96,36 @@ public class SingletonDemo {
         System.out.println(s3 == s4);
         Singleton s5 = Singleton.getInstance();
         Singleton s6 = Singleton.getInstance();
-        // 输出“true”，说明s3与s4是同一个实例
+        // 输出“true”，说明s5与s6是同一个实例
         System.out.println(s5 == s6);
+        SingletonHolder s7 = SingletonHolder.getInstance();
+        SingletonHolder s8 = SingletonHolder.getInstance();
+        // 输出“true”，说明s7与s8是同一个实例
+        System.out.println(s7 == s8);
+        // 输出“true”，枚举常量天然唯一
+        System.out.println(SingletonEnum.INSTANCE == SingletonEnum.valueOf("INSTANCE"));
+        SingletonAcquireRelease s9 = SingletonAcquireRelease.getInstance();
+        SingletonAcquireRelease s10 = SingletonAcquireRelease.getInstance();
+        // 输出“true”，说明s9与s10是同一个实例
+        System.out.println(s9 == s10);
+        // 多个线程各自在所属分段上计数，合并后输出“4000”
+        Thread[] workers = new Thread[4];
+        for(int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(() -> {
+                for(int j = 0; j < 1000; j++) {
+                    StripedSingleton.getInstance().increment();
+                }
+            });
+            workers[i].start();
+        }
+        for(Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        System.out.println(StripedSingleton.sum());
     }
 
 }
@@ -87,6 +172,34 @@ class Singleton{
     }
 }
 
+/**
+ * acquire/release双锁检测单例
+ * 懒汉模式，与Singleton相同的双锁检测，只是把发布实例的volatile写换成
+ * lazySet。lazySet是release写入：构造器中的写入不会重排到它之后，读线程
+ * 通过get(acquire语义)读到引用时一定能看到完整构造的实例；省去的是
+ * volatile写之后的StoreLoad屏障。Java 8的AtomicReference没有单独的
+ * acquire读，get仍是volatile读，在x86上与acquire读的代价相同。
+ */
+class SingletonAcquireRelease {
+    private static final AtomicReference<SingletonAcquireRelease> INSTANCE = new AtomicReference<>();
+    
+    private SingletonAcquireRelease() {}
+    
+    public static SingletonAcquireRelease getInstance() {
+        SingletonAcquireRelease instance = INSTANCE.get();
+        if(instance == null) {
+            synchronized (SingletonAcquireRelease.class) {
+                instance = INSTANCE.get();
+                if(instance == null) {
+                    instance = new SingletonAcquireRelease();
+                    INSTANCE.lazySet(instance);
+                }
+            }
+        }
+        return instance;
+    }
+}
+
 /**
  * 懒汉模式
  * 非线程安全版
@@ -99,10 +212,233 @@ class SingletonSimple {
     // 外部通过一个public的getInstance()方法获取该类实例
     public static SingletonSimple getInstance() {
         // 每次获取前判断该类实例是否已存在，若无则new一个
-        if (instance != null) {
+        if (instance == null) {
             instance = new SingletonSimple();
         }
         return instance;
     }
 
 }
+
+/**
+ * 静态内部类(Holder)写法
+ * 懒汉模式，线程安全且getInstance无需加锁
+ */
+class SingletonHolder {
+    // 将构造器声明为private，外部无法用new获取
+    private SingletonHolder() {}
+    
+    // 内部类在第一次被访问时才加载并初始化INSTANCE，类初始化由JVM加锁保证只执行一次
+    private static class Holder {
+        private static final SingletonHolder INSTANCE = new SingletonHolder();
+    }
+    
+    public static SingletonHolder getInstance() {
+        return Holder.INSTANCE;
+    }
+}
+
+/**
+ * 枚举写法
+ * 饿汉模式，由JVM保证唯一，可防止反射和反序列化破坏单例
+ */
+enum SingletonEnum {
+    INSTANCE;
+}
+
+/**
+ * 分段单例
+ * 饿汉模式，类加载时为分段计数器StripedCounter的每个分段创建一个分段实例。
+ * getInstance返回当前线程对应的分段，同一线程总是拿到同一个分段。线程数多于
+ * 分段数时(例如大量虚拟线程)，多个线程会共用一个分段。sum、snapshot和flush
+ * 合并所有分段的状态。计数的内存布局见StripedCounter。
+ * getInstance返回的是分段实例本身，调用方可能持有它，实例无法在分段间迁移，
+ * 因此分段按线程id固定映射。代价是两个繁忙的线程可能固定映射到同一分段，
+ * 此时计数仍然正确，只是该分段上存在竞争。
+ */
+class StripedSingleton {
+    private static final StripedCounter COUNTS = new StripedCounter();
+    private static final StripedSingleton[] STRIPES;
+    
+    static {
+        STRIPES = new StripedSingleton[COUNTS.stripes()];
+        for(int i = 0; i < STRIPES.length; i++) {
+            STRIPES[i] = new StripedSingleton(i);
+        }
+    }
+    
+    // 本实例对应的分段
+    private final int stripe;
+    
+    // 将构造器声明为private，外部无法用new获取
+    private StripedSingleton(int stripe) {
+        this.stripe = stripe;
+    }
+    
+    public static StripedSingleton getInstance() {
+        return STRIPES[COUNTS.stripe()];
+    }
+    
+    public void increment() {
+        COUNTS.increment(stripe);
+    }
+    public void add(long delta) {
+        COUNTS.add(stripe, delta);
+    }
+    
+    // 所有分段的计数之和，并发修改时为近似值
+    public static long sum() {
+        return COUNTS.sum();
+    }
+    // 各分段当前计数的快照
+    public static long[] snapshot() {
+        return COUNTS.snapshot();
+    }
+    // 取出所有分段的计数之和并清零，并发写入的计数不会丢失
+    public static long flush() {
+        return COUNTS.sumThenReset();
+    }
+    
+    // 本实例对应的分段，供测试检查映射
+    int stripe() {
+        return stripe;
+    }
+}
+
+/**
+ * 单例注册表
+ * 统一负责单例的构造。每个单例以名称登记一个构造方法，初始化方式由配置中
+ * 以名称为键的值决定：eager(登记时立即构造，默认)、lazy(首次get时构造)或
+ * background(登记后交给后台线程构造，get时若尚未完成则等待)。构造过程只
+ * 执行一次，注册表记录其耗时和当前线程的内存分配量(JVM不支持统计时为-1)。
+ * 注册表只能控制经由它完成的构造。饿汉单例在类初始化时就创建实例，任何
+ * 直接调用getInstance()或访问该类静态成员的代码都会触发类初始化而绕过
+ * 注册表：lazy和background设置随之失效，记录的耗时也只是返回已有实例的
+ * 时间。因此把单例设为lazy或background时，登记之前不能访问该单例类，之后
+ * 所有访问都必须经过get。
+ * 所有注册表共用一个后台线程执行background构造。该线程是守护线程，空闲
+ * 一段时间后自行退出，需要时再创建，因此注册表无需关闭，也不会阻止JVM退出。
+ */
+class SingletonRegistry {
+    public static final String EAGER = "eager";
+    public static final String LAZY = "lazy";
+    public static final String BACKGROUND = "background";
+    
+    private final Properties config;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    
+    public SingletonRegistry(Properties config) {
+        this.config = config;
+    }
+    
+    public synchronized <T> void register(String name, Class<T> type, Supplier<T> initializer) {
+        if(entries.containsKey(name)) {
+            throw new IllegalArgumentException("单例已登记: " + name);
+        }
+        String mode = config.getProperty(name, EAGER);
+        Entry entry = new Entry(type, mode, initializer);
+        entries.put(name, entry);
+        switch (mode) {
+        case EAGER:
+            entry.task.run();
+            break;
+        case LAZY:
+            break;
+        case BACKGROUND:
+            Background.EXECUTOR.execute(entry.task);
+            break;
+        default:
+            entries.remove(name);
+            throw new IllegalArgumentException("不支持的初始化方式: " + name + "=" + mode);
+        }
+    }
+    
+    public <T> T get(String name, Class<T> type) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(name);
+        }
+        if(entry == null) {
+            throw new IllegalArgumentException("单例未登记: " + name);
+        }
+        // 尚未构造时在当前线程构造，正在其他线程构造时get等待其完成
+        entry.task.run();
+        try {
+            return type.cast(entry.task.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待单例构造时被中断: " + name, e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("单例构造失败: " + name, e.getCause());
+        }
+    }
+    
+    // 输出每个单例的初始化方式、构造耗时(微秒)和内存分配量(字节)，未构造的单例耗时为-
+    public synchronized void printReport() {
+        for(Map.Entry<String, Entry> e : entries.entrySet()) {
+            Entry entry = e.getValue();
+            if(entry.task.isDone()) {
+                System.out.printf("%s[%s]: %d us, %d bytes%n", e.getKey(), entry.mode,
+                        entry.nanos / 1000, entry.allocatedBytes);
+            } else {
+                System.out.printf("%s[%s]: -%n", e.getKey(), entry.mode);
+            }
+        }
+    }
+    
+    /**
+     * 后台构造线程
+     * 第一次登记background单例时才创建线程池，空闲1秒后线程退出。
+     */
+    private static class Background {
+        private static final ExecutorService EXECUTOR;
+        
+        static {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), r -> {
+                        Thread t = new Thread(r, "singleton-warmup");
+                        t.setDaemon(true);
+                        return t;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            EXECUTOR = executor;
+        }
+    }
+    
+    /**
+     * 登记项
+     * 以FutureTask包装计时的构造过程，保证只执行一次。
+     */
+    private static class Entry {
+        private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+        
+        private final String mode;
+        private final FutureTask<Object> task;
+        private volatile long nanos;
+        private volatile long allocatedBytes;
+        
+        Entry(Class<?> type, String mode, Supplier<?> initializer) {
+            this.mode = mode;
+            this.task = new FutureTask<>(() -> {
+                long bytesBefore = allocatedBytes();
+                long start = System.nanoTime();
+                Object instance = type.cast(initializer.get());
+                nanos = System.nanoTime() - start;
+                long bytesAfter = allocatedBytes();
+                allocatedBytes = bytesBefore < 0 ? -1 : bytesAfter - bytesBefore;
+                return instance;
+            });
+        }
+        
+        // 当前线程累计分配的字节数，仅HotSpot等支持该统计的JVM可用
+        private static long allocatedBytes() {
+            if(THREADS instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) THREADS;
+                if(hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+                    return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -1,5 +1,18 @@
 package com.yukiyama.designpattern.creation;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
 /**
  * 简单工厂模式(静态工厂模式)
  * 当客户端需要根据某个变量的不同值来声明不同的对象时，可以使用简单工厂模式。
@@ -18,6 +31,14 @@ package com.yukiyama.designpattern.creation;
  * 本示例以四则运算为例，演示客户端如何通过运算符从运算工厂中获取相应的运算
  * 产品，然后执行该产品的产品方法(执行运算)返回结果。
  * 
+ * 由于本例中的运算产品不持有状态，可以让静态工厂预先缓存每种运算的共享实例，
+ * 以运算符字符为下标保存在一张运算表中，getOperation(char)直接查表返回，
+ * 不走选择分支也不新建对象。运行时还可以通过register方法登记新的运算符，
+ * 新增产品时不必修改选择分支。另外抽象产品类提供了数组和IntBuffer的批量
+ * 运算方法，一次调用处理一批操作数，避免逐个运算时的方法调用开销。
+ * 对于存放在大文件中的(a, op, b)运算记录，OperationFileEvaluator通过内存
+ * 映射分段读取，在fork-join线程池中并行查表运算，结果写入映射的输出文件。
+ * 
  * 结构
  * 静态工厂类
  *   维护一个静态方法，根据参数返回具体产品类的实例(返回类型是抽象产品类型)。
@@ -33,6 +54,42 @@ public class StaticFactoryDemo {
         Operation oper = OperationFactory.operate("*");
         // 执行该产品的方法。输出“12”
         System.out.println(oper.result(3, 4));
+        // 通过运算符字符查表获取共享的运算产品，输出“true”
+        System.out.println(OperationFactory.getOperation('*') == OperationFactory.getOperation('*'));
+        // 运行时登记新的运算符(取模)，之后即可像内置运算一样获取，输出“1”
+        OperationFactory.register('%', new Operation() {
+            @Override
+            public int result(int a, int b) {
+                return a % b;
+            }
+        });
+        System.out.println(OperationFactory.getOperation('%').result(7, 3));
+        // 批量运算，一次调用处理整个数组，输出“[5, 7, 9]”
+        int[] a = {1, 2, 3};
+        int[] b = {4, 5, 6};
+        int[] out = new int[3];
+        OperationFactory.getOperation('+').result(a, b, out, 0, a.length);
+        System.out.println(Arrays.toString(out));
+        // 批量运算文件中的(a, op, b)记录，输出“[7, -1, 12, 2]”
+        try {
+            Path in = Files.createTempFile("operations", ".bin");
+            Path res = Files.createTempFile("results", ".bin");
+            ByteBuffer records = ByteBuffer.allocate(OperationFileEvaluator.RECORD_BYTES * 4);
+            records.putInt(3).putChar('+').putInt(4);
+            records.putInt(3).putChar('-').putInt(4);
+            records.putInt(3).putChar('*').putInt(4);
+            records.putInt(8).putChar('/').putInt(4);
+            Files.write(in, records.array());
+            OperationFileEvaluator.evaluate(in, res, ForkJoinPool.commonPool());
+            IntBuffer results = ByteBuffer.wrap(Files.readAllBytes(res)).asIntBuffer();
+            int[] values = new int[results.remaining()];
+            results.get(values);
+            System.out.println(Arrays.toString(values));
+            Files.delete(in);
+            Files.delete(res);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
 }
@@ -43,6 +100,39 @@ public class StaticFactoryDemo {
  * switch-case。
  */
 class OperationFactory{
+    // 运算表的大小，只支持ASCII范围内的运算符
+    private static final int TABLE_SIZE = 128;
+    // 以运算符字符为下标的运算表，保存各运算的共享实例。登记新运算符时
+    // 整表复制后替换引用(写时复制)，查表一方无需加锁
+    private static volatile Operation[] operations = new Operation[TABLE_SIZE];
+    
+    static {
+        register('+', new OperationAdd());
+        register('-', new OperationSub());
+        register('*', new OperationMul());
+        register('/', new OperationDiv());
+    }
+    
+    /**
+     * 登记一个运算符及其运算产品，已存在的运算符会被覆盖。
+     * 由于产品会被所有调用方共享，登记的产品必须是无状态的。
+     */
+    public static synchronized void register(char sign, Operation oper) {
+        if(sign >= TABLE_SIZE || oper == null) {
+            throw new IllegalArgumentException("不支持此运算符: " + sign);
+        }
+        Operation[] table = operations.clone();
+        table[sign] = oper;
+        operations = table;
+    }
+    
+    /**
+     * 根据运算符字符查表返回共享的运算产品，未登记的运算符返回null。
+     */
+    public static Operation getOperation(char sign) {
+        return sign < TABLE_SIZE ? operations[sign] : null;
+    }
+    
     public static Operation operate(String sign) {
         Operation oper = null;
         switch (sign) {
@@ -69,9 +159,62 @@ class OperationFactory{
  * 抽象产品类
  * 定义产品的抽象方法。
  * 下例以四则运算为产品，内有对两个int数的运算方法。
+ * 另提供批量运算方法，对数组a,b中[offset, offset+length)区间内的元素逐一
+ * 运算，结果写入out的相同位置。默认实现逐个调用result(int, int)，具体产品
+ * 可以重写为不含虚调用的紧凑循环，便于JIT自动向量化。
  */
 abstract class Operation{
+    // IntBuffer不可直接访问底层数组时，分段拷贝所用的缓冲区长度
+    private static final int BUFFER_CHUNK = 1024;
+    
     public abstract int result(int a, int b);
+    
+    public void result(int[] a, int[] b, int[] out, int offset, int length) {
+        checkRange(a, b, out, offset, length);
+        for(int i = offset, end = offset + length; i < end; i++) {
+            out[i] = result(a[i], b[i]);
+        }
+    }
+    
+    /**
+     * 对a,b的剩余元素做批量运算并写入out，三者的position均前移运算的个数。
+     * 三个缓冲区都可访问底层数组时直接走数组版本，否则分段拷贝后再运算。
+     */
+    public void result(IntBuffer a, IntBuffer b, IntBuffer out) {
+        int length = a.remaining();
+        if(b.remaining() != length || out.remaining() < length) {
+            throw new IllegalArgumentException("缓冲区剩余长度不一致。");
+        }
+        if(a.hasArray() && b.hasArray() && out.hasArray()
+                && a.arrayOffset() + a.position() == b.arrayOffset() + b.position()
+                && a.arrayOffset() + a.position() == out.arrayOffset() + out.position()) {
+            result(a.array(), b.array(), out.array(), a.arrayOffset() + a.position(), length);
+            a.position(a.position() + length);
+            b.position(b.position() + length);
+            out.position(out.position() + length);
+            return;
+        }
+        int chunk = Math.min(length, BUFFER_CHUNK);
+        int[] ca = new int[chunk];
+        int[] cb = new int[chunk];
+        int[] co = new int[chunk];
+        while(a.hasRemaining()) {
+            int n = Math.min(a.remaining(), chunk);
+            a.get(ca, 0, n);
+            b.get(cb, 0, n);
+            result(ca, cb, co, 0, n);
+            out.put(co, 0, n);
+        }
+    }
+    
+    // 批量运算前一次性检查区间，循环体内不再做额外判断
+    protected static void checkRange(int[] a, int[] b, int[] out, int offset, int length) {
+        if(offset < 0 || length < 0 || offset + length < 0
+                || offset + length > a.length || offset + length > b.length
+                || offset + length > out.length) {
+            throw new ArrayIndexOutOfBoundsException("offset: " + offset + ", length: " + length);
+        }
+    }
 }
 
 /**
@@ -84,6 +227,13 @@ class OperationAdd extends Operation{
     public int result(int a, int b) {
         return a + b;
     }
+    @Override
+    public void result(int[] a, int[] b, int[] out, int offset, int length) {
+        checkRange(a, b, out, offset, length);
+        for(int i = offset, end = offset + length; i < end; i++) {
+            out[i] = a[i] + b[i];
+        }
+    }
 }
 
 /**
@@ -94,6 +244,13 @@ class OperationSub extends Operation{
     public int result(int a, int b) {
         return a - b;
     }
+    @Override
+    public void result(int[] a, int[] b, int[] out, int offset, int length) {
+        checkRange(a, b, out, offset, length);
+        for(int i = offset, end = offset + length; i < end; i++) {
+            out[i] = a[i] - b[i];
+        }
+    }
 }
 
 /**
@@ -104,10 +261,19 @@ class OperationMul extends Operation{
     public int result(int a, int b) {
         return a * b;
     }
+    @Override
+    public void result(int[] a, int[] b, int[] out, int offset, int length) {
+        checkRange(a, b, out, offset, length);
+        for(int i = offset, end = offset + length; i < end; i++) {
+            out[i] = a[i] * b[i];
+        }
+    }
 }
 
 /**
  * 具体产品类，除法
+ * 单个运算时除数为0抛出异常。批量运算时不逐个抛出异常，而是在除数为0的位置
+ * 写入调用方指定的替代值，并返回除数为0的元素个数，由调用方决定如何处理。
  */
 class OperationDiv extends Operation{
     @Override
@@ -118,4 +284,167 @@ class OperationDiv extends Operation{
         }
         return a / b;
     }
+    // 批量运算，除数为0的位置写入0
+    @Override
+    public void result(int[] a, int[] b, int[] out, int offset, int length) {
+        result(a, b, out, offset, length, 0);
+    }
+    // 批量运算，除数为0的位置写入zeroDivValue，返回除数为0的元素个数
+    public int result(int[] a, int[] b, int[] out, int offset, int length, int zeroDivValue) {
+        checkRange(a, b, out, offset, length);
+        int zeroDivCount = 0;
+        for(int i = offset, end = offset + length; i < end; i++) {
+            int divisor = b[i];
+            if(divisor == 0) {
+                out[i] = zeroDivValue;
+                zeroDivCount++;
+            } else {
+                out[i] = a[i] / divisor;
+            }
+        }
+        return zeroDivCount;
+    }
+}
+
+/**
+ * 运算记录文件的批量运算器
+ * 输入文件由定长记录组成，每条记录为int a, char op, int b(大端序，共10字节)，
+ * 输出文件中第i个int(4字节)为第i条记录的运算结果。文件按记录边界切分成若干
+ * 分段，由fork-join线程池并行处理，每个分段各自内存映射输入和输出区域，
+ * 可以处理远大于堆内存的文件。运算产品从OperationFactory的运算表中获取共享
+ * 实例，分段内的记录按块解码到每个分段复用的数组中，连续的同一运算符记录
+ * 一次交给产品的批量运算方法，处理过程中不为单条记录创建任何对象。
+ * 除法沿用批量运算的约定，除数为0的记录结果写0，不抛出异常，evaluate返回
+ * 这类记录的条数。遇到未登记的运算符时抛出IllegalArgumentException并指明
+ * 记录下标，运算失败时删除不完整的输出文件。
+ */
+class OperationFileEvaluator{
+    // 单条记录的字节数，int a(4) + char op(2) + int b(4)
+    public static final int RECORD_BYTES = 10;
+    // 单条结果的字节数
+    public static final int RESULT_BYTES = 4;
+    // 默认每个分段的最大记录数，保证单次映射的区域远小于2GB上限
+    public static final int DEFAULT_CHUNK_RECORDS = 1 << 20;
+    // 分段内每次解码的记录数
+    private static final int BLOCK_RECORDS = 4096;
+    
+    private OperationFileEvaluator() {}
+    
+    public static long evaluate(Path in, Path out, ForkJoinPool pool) throws IOException {
+        return evaluate(in, out, pool, DEFAULT_CHUNK_RECORDS);
+    }
+    
+    /**
+     * 运算in中的全部记录并将结果写入out(已存在则覆盖)，返回除数为0的记录数。
+     * chunkRecords为单个分段的最大记录数，不超过该值的分段不再拆分。
+     */
+    public static long evaluate(Path in, Path out, ForkJoinPool pool, int chunkRecords) throws IOException {
+        if(chunkRecords <= 0 || chunkRecords > Integer.MAX_VALUE / RECORD_BYTES) {
+            throw new IllegalArgumentException("分段记录数不合法: " + chunkRecords);
+        }
+        // 只有本次调用打开(截断)了out之后，失败时才删除out。in无法打开或长度
+        // 不合法时out保持原样
+        boolean opened = false;
+        boolean completed = false;
+        try (FileChannel input = FileChannel.open(in, StandardOpenOption.READ)) {
+            long size = input.size();
+            if(size % RECORD_BYTES != 0) {
+                throw new IllegalArgumentException("文件长度不是记录长度的整数倍: " + size);
+            }
+            long records = size / RECORD_BYTES;
+            try (FileChannel output = FileChannel.open(out, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                opened = true;
+                long zeroDivs = records == 0 ? 0 : pool.invoke(new ChunkTask(input, output, 0, records, chunkRecords));
+                completed = true;
+                return zeroDivs;
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            if(opened && !completed) {
+                Files.deleteIfExists(out);
+            }
+        }
+    }
+    
+    /**
+     * 分段任务
+     * 区间[from, to)内的记录数超过分段上限时对半拆分，否则映射该区间直接运算，
+     * 返回区间内除数为0的记录数。
+     */
+    private static class ChunkTask extends RecursiveTask<Long>{
+        private static final long serialVersionUID = 1L;
+        
+        private final FileChannel input;
+        private final FileChannel output;
+        private final long from;
+        private final long to;
+        private final int chunkRecords;
+        
+        ChunkTask(FileChannel input, FileChannel output, long from, long to, int chunkRecords) {
+            this.input = input;
+            this.output = output;
+            this.from = from;
+            this.to = to;
+            this.chunkRecords = chunkRecords;
+        }
+        
+        @Override
+        protected Long compute() {
+            if(to - from > chunkRecords) {
+                long mid = from + (to - from) / 2;
+                ChunkTask left = new ChunkTask(input, output, from, mid, chunkRecords);
+                left.fork();
+                long right = new ChunkTask(input, output, mid, to, chunkRecords).compute();
+                return left.join() + right;
+            }
+            int count = (int) (to - from);
+            try {
+                MappedByteBuffer src = input.map(FileChannel.MapMode.READ_ONLY,
+                        from * RECORD_BYTES, (long) count * RECORD_BYTES);
+                MappedByteBuffer dst = output.map(FileChannel.MapMode.READ_WRITE,
+                        from * RESULT_BYTES, (long) count * RESULT_BYTES);
+                int block = Math.min(count, BLOCK_RECORDS);
+                int[] a = new int[block];
+                int[] b = new int[block];
+                char[] signs = new char[block];
+                int[] results = new int[block];
+                long zeroDivs = 0;
+                for(int done = 0; done < count; done += block) {
+                    int n = Math.min(block, count - done);
+                    for(int i = 0; i < n; i++) {
+                        a[i] = src.getInt();
+                        signs[i] = src.getChar();
+                        b[i] = src.getInt();
+                    }
+                    // 连续的同一运算符记录一次批量运算
+                    for(int start = 0, end; start < n; start = end) {
+                        char sign = signs[start];
+                        end = start + 1;
+                        while(end < n && signs[end] == sign) {
+                            end++;
+                        }
+                        Operation oper = OperationFactory.getOperation(sign);
+                        if(oper == null) {
+                            throw new IllegalArgumentException("第" + (from + done + start)
+                                    + "条记录的运算符不支持: " + sign);
+                        }
+                        if(oper instanceof OperationDiv) {
+                            zeroDivs += ((OperationDiv) oper).result(a, b, results, start, end - start, 0);
+                        } else {
+                            oper.result(a, b, results, start, end - start);
+                        }
+                    }
+                    for(int i = 0; i < n; i++) {
+                        dst.putInt(results[i]);
+                    }
+                }
+                return zeroDivs;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
 }
@@ -0,0 +1,19 @@
+package com.yukiyama.designpattern.creation;
+
+import com.yukiyama.designpattern.creation.copy.DeepCopyable;
+
+/**
+ * 浅拷贝版
+ * 原型类型中的引用类型字段
+ */
+@DeepCopyable
+class WorkExperience{
+    String company;
+
+    public String getCompany() {
+        return company;
+    }
+    public void setCompany(String company) {
+        this.company = company;
+    }
+}
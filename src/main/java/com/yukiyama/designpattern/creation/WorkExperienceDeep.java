@@ -0,0 +1,32 @@
+package com.yukiyama.designpattern.creation;
+
+import java.io.Serializable;
+
+import com.yukiyama.designpattern.creation.copy.DeepCopyable;
+
+/**
+ * 深拷贝版
+ * 原型类型中的引用类型字段
+ */
+@DeepCopyable
+class WorkExperienceDeep implements Cloneable, Serializable{
+    private static final long serialVersionUID = 1L;
+    String company;
+
+    public String getCompany() {
+        return company;
+    }
+    public void setCompany(String company) {
+        this.company = company;
+    }
+    @Override
+    protected Object clone() {
+        WorkExperienceDeep we = null;
+        try {
+            we = (WorkExperienceDeep) super.clone();
+        } catch (CloneNotSupportedException e) {
+            e.printStackTrace();
+        }
+        return we;
+    }
+}
@@ -0,0 +1,32 @@
+package com.yukiyama.designpattern.creation.copy;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 指定DeepCopyable类中一个字段的拷贝方式。
+ * 基本类型字段直接复制值；String、基本类型的包装类和枚举是不变类型，默认
+ * 按SHARED处理；其他引用类型的字段必须显式标注，否则编译报错，以免像手写
+ * clone()那样无意中共享了可变对象。
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.FIELD)
+public @interface CopyPolicy {
+    Policy value();
+    
+    enum Policy{
+        // 只复制引用，拷贝与原型共享同一个可变对象，与Object.clone()的效果相同
+        SHALLOW,
+        // 拷贝出新实例。字段类型须是DeepCopyable类(调用其Copier)，或元素为
+        // 基本类型、String的数组(复制数组)
+        DEEP,
+        // 只复制引用，声明该字段的类型是不变类型，共享是安全的
+        SHARED,
+        // 不拷贝，保留构造器中的初始值，用于缓存、状态标记等派生字段
+        SKIP
+    }
+}
@@ -0,0 +1,274 @@
+package com.yukiyama.designpattern.creation.copy;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+import com.yukiyama.designpattern.creation.copy.CopyPolicy.Policy;
+
+/**
+ * 拷贝代码生成器
+ * 为每个标注了DeepCopyable的类T生成同包的TCopier类(嵌套类的Copier类名以
+ * 下划线连接外部类名)，T是public类时TCopier及其copy方法也是public的。
+ * 生成的copy方法先调用T的空白构造器T(DeepCopyable.Blank)，没有时调用无参
+ * 构造器，再按字段声明顺序逐个赋值，全部是直接的字段读写，没有反射、循环
+ * 和异常处理，JIT可以完全内联。各字段的拷贝方式见CopyPolicy。
+ * 以下情况在编译期报错而不是生成不完整的拷贝：
+ * 类是抽象类、泛型类、非静态内部类，或继承了Object以外的类(父类字段无法
+ * 拷贝)；没有非private的无参构造器或空白构造器；要拷贝的字段是private或final；可变
+ * 引用类型的字段没有标注CopyPolicy；DEEP字段的类型既不是DeepCopyable类，
+ * 也不是元素为基本类型或String的数组。
+ * 标注为SHARED的字段类型若含有非final的实例字段，给出警告。
+ *
+ * 使用时需要先单独编译本包，再以-processor指定本类编译其他代码，见pom.xml。
+ */
+@SupportedAnnotationTypes("com.yukiyama.designpattern.creation.copy.DeepCopyable")
+public class DeepCopyProcessor extends AbstractProcessor {
+    static final String SUFFIX = "Copier";
+    private static final String BLANK = DeepCopyable.Blank.class.getCanonicalName();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+        for(Element element : round.getElementsAnnotatedWith(DeepCopyable.class)) {
+            if(element.getKind() != ElementKind.CLASS) {
+                error(element, "只有类可以标注@DeepCopyable。");
+                continue;
+            }
+            TypeElement type = (TypeElement) element;
+            List<String> assignments = assignments(type);
+            if(assignments != null) {
+                write(type, hasBlankConstructor(type), assignments);
+            }
+        }
+        return true;
+    }
+
+    // 返回各字段的赋值语句，类或字段不满足要求时报错并返回null
+    private List<String> assignments(TypeElement type) {
+        boolean valid = checkType(type);
+        List<String> assignments = new ArrayList<>();
+        for(VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            if(field.getModifiers().contains(Modifier.STATIC)) {
+                continue;
+            }
+            String value = copyExpression(field);
+            if(value == null) {
+                valid = false;
+            } else if(!value.isEmpty()) {
+                assignments.add("copy." + field.getSimpleName() + " = " + value + ";");
+            }
+        }
+        return valid ? assignments : null;
+    }
+
+    private boolean checkType(TypeElement type) {
+        boolean valid = true;
+        Set<Modifier> modifiers = type.getModifiers();
+        if(modifiers.contains(Modifier.ABSTRACT) || modifiers.contains(Modifier.PRIVATE)) {
+            valid = error(type, "@DeepCopyable类不能是抽象类或private类。");
+        }
+        if(!type.getTypeParameters().isEmpty()) {
+            valid = error(type, "@DeepCopyable类不能是泛型类。");
+        }
+        if(type.getNestingKind() != NestingKind.TOP_LEVEL && !modifiers.contains(Modifier.STATIC)) {
+            valid = error(type, "@DeepCopyable类不能是非静态内部类。");
+        }
+        TypeMirror superclass = type.getSuperclass();
+        if(superclass.getKind() == TypeKind.DECLARED
+                && !((TypeElement) ((DeclaredType) superclass).asElement())
+                        .getQualifiedName().contentEquals("java.lang.Object")) {
+            valid = error(type, "@DeepCopyable类不能继承其他类，父类中的字段无法拷贝。");
+        }
+        boolean noArgConstructor = false;
+        for(ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if(constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                noArgConstructor = true;
+            }
+        }
+        if(!noArgConstructor && !hasBlankConstructor(type)) {
+            valid = error(type, "@DeepCopyable类需要非private的无参构造器或空白构造器。");
+        }
+        return valid;
+    }
+
+    // 是否有以DeepCopyable.Blank为唯一参数的非private构造器
+    private boolean hasBlankConstructor(TypeElement type) {
+        for(ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            List<? extends VariableElement> parameters = constructor.getParameters();
+            if(parameters.size() == 1 && !constructor.getModifiers().contains(Modifier.PRIVATE)
+                    && parameters.get(0).asType().getKind() == TypeKind.DECLARED
+                    && ((TypeElement) ((DeclaredType) parameters.get(0).asType()).asElement())
+                            .getQualifiedName().contentEquals(BLANK)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 返回拷贝字段的表达式，SKIP字段返回空串，字段不满足要求时报错并返回null
+    private String copyExpression(VariableElement field) {
+        CopyPolicy annotation = field.getAnnotation(CopyPolicy.class);
+        TypeMirror type = field.asType();
+        Policy policy;
+        if(annotation != null) {
+            policy = annotation.value();
+        } else if(type.getKind().isPrimitive() || isImmutable(type)) {
+            policy = Policy.SHARED;
+        } else {
+            error(field, "可变引用类型的字段需要用@CopyPolicy指定拷贝方式。");
+            return null;
+        }
+        if(policy == Policy.SKIP) {
+            return "";
+        }
+        Set<Modifier> modifiers = field.getModifiers();
+        if(modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.FINAL)) {
+            error(field, "要拷贝的字段不能是private或final。");
+            return null;
+        }
+        String source = "source." + field.getSimpleName();
+        switch(policy) {
+        case SHARED:
+            warnIfMutable(field, type);
+            return source;
+        case SHALLOW:
+            return source;
+        case DEEP:
+            if(type.getKind() == TypeKind.ARRAY) {
+                TypeMirror component = ((ArrayType) type).getComponentType();
+                if(component.getKind().isPrimitive() || isString(component)) {
+                    return source + " == null ? null : " + source + ".clone()";
+                }
+            } else if(type.getKind() == TypeKind.DECLARED) {
+                TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+                if(element.getAnnotation(DeepCopyable.class) != null) {
+                    return source + " == null ? null : " + copierName(element) + ".copy(" + source + ")";
+                }
+            }
+            error(field, "DEEP字段的类型须是@DeepCopyable类，或元素为基本类型、String的数组。");
+            return null;
+        default:
+            throw new AssertionError(policy);
+        }
+    }
+
+    private boolean isImmutable(TypeMirror type) {
+        if(type.getKind() != TypeKind.DECLARED) {
+            return false;
+        }
+        TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+        if(element.getKind() == ElementKind.ENUM) {
+            return true;
+        }
+        String name = element.getQualifiedName().toString();
+        return isString(type) || name.equals("java.lang.Integer") || name.equals("java.lang.Long")
+                || name.equals("java.lang.Short") || name.equals("java.lang.Byte")
+                || name.equals("java.lang.Character") || name.equals("java.lang.Boolean")
+                || name.equals("java.lang.Double") || name.equals("java.lang.Float");
+    }
+
+    private boolean isString(TypeMirror type) {
+        return type.getKind() == TypeKind.DECLARED && ((TypeElement) ((DeclaredType) type).asElement())
+                .getQualifiedName().contentEquals("java.lang.String");
+    }
+
+    // 声明为SHARED的类型若有非final的实例字段，很可能并不是不变类型
+    private void warnIfMutable(VariableElement field, TypeMirror type) {
+        if(type.getKind() != TypeKind.DECLARED || isImmutable(type)) {
+            return;
+        }
+        TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+        for(VariableElement member : ElementFilter.fieldsIn(element.getEnclosedElements())) {
+            Set<Modifier> modifiers = member.getModifiers();
+            if(!modifiers.contains(Modifier.STATIC) && !modifiers.contains(Modifier.FINAL)) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                        "SHARED字段的类型" + element.getSimpleName() + "含有非final字段"
+                                + member.getSimpleName() + "，共享可能不安全。", field);
+                return;
+            }
+        }
+    }
+
+    private void write(TypeElement type, boolean blank, List<String> assignments) {
+        String packageName = packageOf(type).getQualifiedName().toString();
+        String copier = simpleCopierName(type);
+        String typeName = type.getQualifiedName().toString();
+        String access = type.getModifiers().contains(Modifier.PUBLIC) ? "public " : "";
+        StringBuilder code = new StringBuilder();
+        if(!packageName.isEmpty()) {
+            code.append("package ").append(packageName).append(";\n\n");
+        }
+        code.append("// 由DeepCopyProcessor根据").append(type.getSimpleName()).append("生成，请勿手工修改\n");
+        code.append(access).append("final class ").append(copier).append(" {\n");
+        code.append("    private ").append(copier).append("() {}\n\n");
+        code.append("    ").append(access).append("static ").append(typeName)
+                .append(" copy(").append(typeName).append(" source) {\n");
+        code.append("        ").append(typeName).append(" copy = new ").append(typeName)
+                .append(blank ? "(" + BLANK + ".INSTANCE);\n" : "();\n");
+        for(String assignment : assignments) {
+            code.append("        ").append(assignment).append("\n");
+        }
+        code.append("        return copy;\n");
+        code.append("    }\n");
+        code.append("}\n");
+        String name = packageName.isEmpty() ? copier : packageName + "." + copier;
+        try (Writer out = processingEnv.getFiler().createSourceFile(name, type).openWriter()) {
+            out.write(code.toString());
+        } catch (IOException e) {
+            error(type, "无法生成" + name + ": " + e.getMessage());
+        }
+    }
+
+    private static PackageElement packageOf(Element element) {
+        while(element.getKind() != ElementKind.PACKAGE) {
+            element = element.getEnclosingElement();
+        }
+        return (PackageElement) element;
+    }
+
+    // 嵌套类以下划线连接各层类名，例如Outer.Inner对应Outer_InnerCopier
+    private static String simpleCopierName(TypeElement type) {
+        StringBuilder name = new StringBuilder(type.getSimpleName());
+        for(Element e = type.getEnclosingElement(); e.getKind() != ElementKind.PACKAGE; e = e.getEnclosingElement()) {
+            name.insert(0, '_').insert(0, e.getSimpleName());
+        }
+        return name.append(SUFFIX).toString();
+    }
+
+    private static String copierName(TypeElement type) {
+        String packageName = packageOf(type).getQualifiedName().toString();
+        return packageName.isEmpty() ? simpleCopierName(type) : packageName + "." + simpleCopierName(type);
+    }
+
+    // 报告错误，总是返回false，便于在检查中直接赋值
+    private boolean error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+        return false;
+    }
+}
@@ -0,0 +1,31 @@
+package com.yukiyama.designpattern.creation.copy;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标注需要生成拷贝代码的原型类。
+ * 编译时DeepCopyProcessor为被标注的类T在同一个包中生成TCopier类，其静态
+ * 方法copy(T)按各字段的CopyPolicy逐个字段拷贝，不使用反射也不抛出受检异常。
+ * 被标注的类需要有非private的无参构造器，要拷贝的字段不能是private或final。
+ * 无参构造器若会分配随后被拷贝覆盖的字段，可以另提供以Blank为唯一参数的
+ * 构造器，生成的代码优先使用它创建拷贝。
+ * 注解保留到class文件中，以便其他编译单元中的类把它作为DEEP字段的类型。
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface DeepCopyable {
+    
+    /**
+     * 空白构造标记
+     * 以Blank为唯一参数的非private构造器只供生成的拷贝类使用，它不必初始化
+     * 要拷贝的字段，例如不必为DEEP字段分配一个随即被覆盖的实例。
+     */
+    enum Blank{
+        INSTANCE
+    }
+}
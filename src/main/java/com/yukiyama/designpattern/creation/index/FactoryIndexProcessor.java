@@ -0,0 +1,189 @@
+package com.yukiyama.designpattern.creation.index;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.MirroredTypeException;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * 工厂索引生成器
+ * 为IndexedFactory的每个base生成一个索引类，例如base为OperFactory时生成
+ * 同包的OperFactoryGeneratedIndex：
+ *   static Map<String, Supplier<OperFactory>> factories()
+ * 方法体是按键排序的一串put语句，值是构造器引用(AddFactory::new)，因此
+ * 运行时只需加载索引类和各工厂类本身，不涉及反射。
+ * 以下情况在编译期报错：被标注的不是类，或是抽象类、非静态内部类；不是
+ * base的子类；没有对base所在包可见的无参构造器；同一个base下键重复。
+ * 索引只包含与本处理器一起编译的类。单独编译的插件若也生成同名索引类，
+ * 会与本模块的索引冲突，因此插件中的工厂应在启动时自行登记。
+ *
+ * 使用时需要先单独编译本包，再以-processor指定本类编译其他代码，见pom.xml。
+ */
+@SupportedAnnotationTypes("com.yukiyama.designpattern.creation.index.IndexedFactory")
+public class FactoryIndexProcessor extends AbstractProcessor {
+    static final String SUFFIX = "GeneratedIndex";
+    
+    // 已生成索引的base，之后的轮次中再出现同一base的工厂时报错
+    private final Set<String> generated = new HashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+        // base -> (键 -> 工厂类的全限定名)
+        Map<TypeElement, Map<String, String>> indexes = new LinkedHashMap<>();
+        boolean valid = true;
+        for(Element element : round.getElementsAnnotatedWith(IndexedFactory.class)) {
+            IndexedFactory annotation = element.getAnnotation(IndexedFactory.class);
+            TypeElement base = base(annotation);
+            if(element.getKind() != ElementKind.CLASS) {
+                valid = error(element, "只有类可以标注@IndexedFactory。");
+                continue;
+            }
+            TypeElement factory = (TypeElement) element;
+            if(!check(factory, base)) {
+                valid = false;
+                continue;
+            }
+            String baseName = base.getQualifiedName().toString();
+            if(generated.contains(baseName)) {
+                valid = error(factory, baseName + "的索引已在之前的轮次中生成。");
+                continue;
+            }
+            Map<String, String> index = indexes.computeIfAbsent(base, b -> new TreeMap<>());
+            String previous = index.put(annotation.value(), factory.getQualifiedName().toString());
+            if(previous != null) {
+                valid = error(factory, "键\"" + annotation.value() + "\"已由" + previous + "使用。");
+            }
+        }
+        if(valid) {
+            for(Map.Entry<TypeElement, Map<String, String>> entry : indexes.entrySet()) {
+                write(entry.getKey(), entry.getValue());
+                generated.add(entry.getKey().getQualifiedName().toString());
+            }
+        }
+        return true;
+    }
+
+    // Class类型的注解值在编译期无法取得Class对象，只能从异常中取得类型
+    private TypeElement base(IndexedFactory annotation) {
+        try {
+            annotation.base();
+            throw new AssertionError("编译期不应能取得Class对象");
+        } catch (MirroredTypeException e) {
+            return (TypeElement) ((DeclaredType) e.getTypeMirror()).asElement();
+        }
+    }
+
+    private boolean check(TypeElement factory, TypeElement base) {
+        boolean valid = true;
+        Set<Modifier> modifiers = factory.getModifiers();
+        if(modifiers.contains(Modifier.ABSTRACT) || modifiers.contains(Modifier.PRIVATE)) {
+            valid = error(factory, "@IndexedFactory类不能是抽象类或private类。");
+        }
+        if(factory.getNestingKind() != NestingKind.TOP_LEVEL && !modifiers.contains(Modifier.STATIC)) {
+            valid = error(factory, "@IndexedFactory类不能是非静态内部类。");
+        }
+        TypeMirror baseType = processingEnv.getTypeUtils().erasure(base.asType());
+        if(!processingEnv.getTypeUtils().isAssignable(factory.asType(), baseType)) {
+            valid = error(factory, "@IndexedFactory类须是" + base.getQualifiedName() + "的子类。");
+        }
+        boolean samePackage = packageOf(factory).equals(packageOf(base));
+        if(!samePackage && !modifiers.contains(Modifier.PUBLIC)) {
+            valid = error(factory, "与" + base.getSimpleName() + "不在同一个包中的@IndexedFactory类须是public类。");
+        }
+        boolean noArgConstructor = false;
+        for(ExecutableElement constructor : ElementFilter.constructorsIn(factory.getEnclosedElements())) {
+            Set<Modifier> access = constructor.getModifiers();
+            if(constructor.getParameters().isEmpty() && !access.contains(Modifier.PRIVATE)
+                    && (samePackage || access.contains(Modifier.PUBLIC))) {
+                noArgConstructor = true;
+            }
+        }
+        if(!noArgConstructor) {
+            valid = error(factory, "@IndexedFactory类需要对" + base.getSimpleName() + "所在包可见的无参构造器。");
+        }
+        return valid;
+    }
+
+    private void write(TypeElement base, Map<String, String> index) {
+        String packageName = packageOf(base).getQualifiedName().toString();
+        String indexName = base.getSimpleName() + SUFFIX;
+        String baseName = base.getQualifiedName().toString();
+        String visibility = base.getModifiers().contains(Modifier.PUBLIC) ? "public " : "";
+        String mapType = "java.util.Map<String, java.util.function.Supplier<" + baseName + ">>";
+        StringBuilder code = new StringBuilder();
+        if(!packageName.isEmpty()) {
+            code.append("package ").append(packageName).append(";\n\n");
+        }
+        code.append("// 由FactoryIndexProcessor根据@IndexedFactory生成，请勿手工修改\n");
+        code.append(visibility).append("final class ").append(indexName).append(" {\n");
+        code.append("    private ").append(indexName).append("() {}\n\n");
+        code.append("    // 返回键到工厂构造器的新映射，调用方可以修改\n");
+        code.append("    ").append(visibility).append("static ").append(mapType).append(" factories() {\n");
+        code.append("        ").append(mapType).append(" factories = new java.util.HashMap<>();\n");
+        for(Map.Entry<String, String> entry : index.entrySet()) {
+            code.append("        factories.put(\"").append(escape(entry.getKey())).append("\", ")
+                    .append(entry.getValue()).append("::new);\n");
+        }
+        code.append("        return factories;\n");
+        code.append("    }\n");
+        code.append("}\n");
+        String name = packageName.isEmpty() ? indexName : packageName + "." + indexName;
+        try (Writer out = processingEnv.getFiler().createSourceFile(name, base).openWriter()) {
+            out.write(code.toString());
+        } catch (IOException e) {
+            error(base, "无法生成" + name + ": " + e.getMessage());
+        }
+    }
+
+    private static String escape(String key) {
+        StringBuilder escaped = new StringBuilder();
+        for(char c : key.toCharArray()) {
+            if(c == '"' || c == '\\') {
+                escaped.append('\\').append(c);
+            } else if(c < 0x20 || c > 0x7e) {
+                escaped.append(String.format("\\u%04x", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static PackageElement packageOf(Element element) {
+        while(element.getKind() != ElementKind.PACKAGE) {
+            element = element.getEnclosingElement();
+        }
+        return (PackageElement) element;
+    }
+
+    // 报告错误，总是返回false，便于在检查中直接赋值
+    private boolean error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+        return false;
+    }
+}
@@ -0,0 +1,25 @@
+package com.yukiyama.designpattern.creation.index;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标注需要登记到工厂索引中的具体工厂类。
+ * 编译时FactoryIndexProcessor收集所有标注了本注解的类，按base分组，为每个
+ * base在其所在包中生成一个索引类(base的类名加GeneratedIndex)，其静态方法
+ * factories()返回键到工厂构造器引用的映射。运行时查找工厂既不扫描类路径
+ * 也不调用Class.forName。
+ * 被标注的类须是base的非抽象子类，并有对base所在包可见的无参构造器。
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface IndexedFactory {
+    // 索引的键，例如运算符，同一个base下不能重复
+    String value();
+    // 被索引的工厂基类
+    Class<?> base();
+}
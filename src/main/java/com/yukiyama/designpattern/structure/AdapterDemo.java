@@ -1,5 +1,28 @@
 package com.yukiyama.designpattern.structure;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
 /**
  * 适配器模式
  * 当前有一工具(一个已存在的类)，能实现若干功能(方法)，需要在某平台(目标)
@@ -14,6 +37,19 @@ package com.yukiyama.designpattern.structure;
  * 充电方法和数据传输方法。演示如何为他们设置适配器类，使得客户端能够通过
  * 调用适配器中的符合TypeC的标准方法来间接使用Typeb和Lightning的充电和
  * 数据传输功能(方法)。
+ * 需要适配的对象类型很多时，可以使用适配器注册表AdapterRegistry，按被适配
+ * 类登记适配器的创建方法，注册表根据对象的实际类型找到适配器，查找结果以
+ * ClassValue按类缓存。无状态的被适配类可以登记一个共享的适配器。适配器中的
+ * 被适配类实例在第一次使用时才创建，以双锁检测保证共享适配器在多线程下也
+ * 只创建一个被适配类实例。
+ * Typec还提供携带实际数据的传输方法，数据以ByteBuffer或ReadableByteChannel
+ * 给出。适配器把数据原样交给被适配类：文件通道通过FileChannel.transferTo
+ * 直接传输，缓冲区按被适配类的要求切片，都不经过byte[]中转。其他通道的
+ * 数据需要先读入直接缓冲区，缓冲区从Typec的缓冲区池中借用，用完归还，
+ * 不会每次调用都分配。
+ * 被适配类的方法耗时较长(阻塞)时，可以用AsyncTypecAdapter把任意Typec包装
+ * 成异步目标AsyncTypec，调用立即返回CompletableFuture，实际调用在指定的
+ * 线程池(或虚拟线程执行器)中执行，并限制同时执行的调用数。
  * 
  * 结构
  * 抽象目标类
@@ -24,6 +60,10 @@ package com.yukiyama.designpattern.structure;
  * 适配器类(AdapterB2C/AdapterL2C)：
  *   继承目标抽象类，内部持有一个被适配类实例，实现目标抽象类的抽象方法，在
  *   方法内部调用其持有的被适配类的原有方法。
+ * 适配器注册表
+ *   按被适配类登记适配器，根据对象类型返回适配器。
+ * 异步目标类和异步适配器
+ *   以CompletableFuture返回结果，在执行器中调用被包装的Typec。
  */
 public class AdapterDemo {
 
@@ -40,6 +80,28 @@ public class AdapterDemo {
         t2.typecCharge();
         // 输出“使用TypeB接口传输数据”
         t2.typecDataTrans();
+        // 在注册表中登记适配器，Typeb无状态，所有Typeb共用一个适配器
+        AdapterRegistry registry = new AdapterRegistry();
+        registry.registerShared(Typeb.class, new AdapterB2C());
+        registry.register(Lightning.class, AdapterL2C::new);
+        // 根据对象类型自动找到适配器，输出“使用Lightning接口充电”
+        registry.adapt(new Lightning()).typecCharge();
+        // 两个Typeb得到同一个适配器，输出“true”
+        System.out.println(registry.adapt(new Typeb()) == registry.adapt(new Typeb()));
+        // 通过适配器传输实际数据，输出“hello”
+        try {
+            ByteArrayOutputStream received = new ByteArrayOutputStream();
+            WritableByteChannel target = Channels.newChannel(received);
+            t2.typecDataTrans(ByteBuffer.wrap("hello".getBytes(StandardCharsets.UTF_8)), target);
+            System.out.println(new String(received.toByteArray(), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        // 包装为异步目标，最多同时执行2个调用，输出“使用TypeB接口充电”
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        AsyncTypec async = new AsyncTypecAdapter(t1, executor, 2);
+        async.typecCharge().join();
+        executor.shutdown();
     }
 
 }
@@ -48,10 +110,118 @@ public class AdapterDemo {
  * 抽象目标类
  * 定义抽象标准方法。
  * 下例是Typec方式的充电方法和数据传输方法。
+ * 携带数据的传输方法提供默认实现，将数据直接写入目标通道，返回传输的字节数。
+ * 这些方法一直传输到数据全部写完，只支持阻塞通道：非阻塞模式的
+ * SelectableChannel直接以IllegalArgumentException拒绝；其他通道连续
+ * MAX_STALLS次读写不到数据时以IOException放弃，而不是空转等待。
  */
 abstract class Typec{
+    // 非文件通道之间中转数据时使用的直接缓冲区大小
+    static final int TRANSFER_BUFFER_BYTES = 64 * 1024;
+    // 连续读写不到数据的次数上限，每次之间让出CPU
+    static final int MAX_STALLS = 16;
+    // 中转缓冲区池。借用时池为空则新分配，归还时池已满则丢弃，池中最多保留
+    // 与CPU核数相同个数的缓冲区。不使用ThreadLocal，以免大量(虚拟)线程各自
+    // 占用一个直接缓冲区
+    private static final BlockingQueue<ByteBuffer> TRANSFER_BUFFERS =
+            new ArrayBlockingQueue<>(Runtime.getRuntime().availableProcessors());
+    
     public abstract void typecCharge();
     public abstract void typecDataTrans();
+    
+    // 将data的剩余字节全部写入target，data的position前移传输的字节数
+    public long typecDataTrans(ByteBuffer data, WritableByteChannel target) throws IOException {
+        return writeFully(data, target);
+    }
+    // 将source中剩余的全部数据写入target
+    public long typecDataTrans(ReadableByteChannel source, WritableByteChannel target) throws IOException {
+        if(source instanceof FileChannel) {
+            FileChannel file = (FileChannel) source;
+            long position = file.position();
+            long n = transferFully(file, position, file.size() - position, target);
+            file.position(position + n);
+            return n;
+        }
+        return transferBuffered(source, target);
+    }
+    
+    /**
+     * 将source中的数据逐段读入借用的直接缓冲区，每段交给本对象的
+     * typecDataTrans(ByteBuffer, target)传输，适配器重写该方法即可让每段
+     * 数据经过被适配类。
+     */
+    protected final long transferBuffered(ReadableByteChannel source, WritableByteChannel target)
+            throws IOException {
+        requireBlocking(source);
+        requireBlocking(target);
+        ByteBuffer buffer = TRANSFER_BUFFERS.poll();
+        if(buffer == null) {
+            buffer = ByteBuffer.allocateDirect(TRANSFER_BUFFER_BYTES);
+        }
+        try {
+            long total = 0;
+            int stalls = 0;
+            for(int n; (n = source.read(buffer)) >= 0; ) {
+                // 读到0字节不算进展，不传输空缓冲区
+                if(n == 0) {
+                    stall(++stalls, source);
+                    continue;
+                }
+                stalls = 0;
+                buffer.flip();
+                total += typecDataTrans(buffer, target);
+                buffer.clear();
+            }
+            return total;
+        } finally {
+            buffer.clear();
+            TRANSFER_BUFFERS.offer(buffer);
+        }
+    }
+    
+    static long writeFully(ByteBuffer data, WritableByteChannel target) throws IOException {
+        requireBlocking(target);
+        long total = 0;
+        int stalls = 0;
+        while(data.hasRemaining()) {
+            int n = target.write(data);
+            if(n == 0) {
+                stall(++stalls, target);
+            } else {
+                stalls = 0;
+                total += n;
+            }
+        }
+        return total;
+    }
+    // 通过transferTo将文件区间写入target，由操作系统直接传输
+    static long transferFully(FileChannel source, long position, long count,
+            WritableByteChannel target) throws IOException {
+        requireBlocking(target);
+        long total = 0;
+        while(total < count) {
+            long n = source.transferTo(position + total, count - total, target);
+            if(n <= 0) {
+                break;
+            }
+            total += n;
+        }
+        return total;
+    }
+    
+    static void requireBlocking(Channel channel) {
+        if(channel instanceof SelectableChannel && !((SelectableChannel) channel).isBlocking()) {
+            throw new IllegalArgumentException("不支持非阻塞模式的通道: " + channel);
+        }
+    }
+    
+    // 通道连续stalls次没有读写任何数据，未达上限时让出CPU后重试
+    private static void stall(int stalls, Channel channel) throws IOException {
+        if(stalls >= MAX_STALLS) {
+            throw new IOException("通道连续" + stalls + "次未传输任何数据，只支持阻塞通道: " + channel);
+        }
+        Thread.yield();
+    }
 }
 
 /**
@@ -82,6 +252,15 @@ class Typeb{
     public void typebDataTrans() {
         System.out.println("使用TypeB接口传输数据");
     }
+    // 传输文件source中从position开始的count字节
+    public long typebDataTrans(FileChannel source, long position, long count,
+            WritableByteChannel target) throws IOException {
+        return Typec.transferFully(source, position, count, target);
+    }
+    // 传输缓冲区中的数据
+    public long typebDataTrans(ByteBuffer data, WritableByteChannel target) throws IOException {
+        return Typec.writeFully(data, target);
+    }
 }
 
 /**
@@ -91,15 +270,50 @@ class Typeb{
  * 下例是Typeb转Typec的适配器。
  */
 class AdapterB2C extends Typec{
-    Typeb typeb = new Typeb();
+    // 共享的适配器会被多个线程同时使用，以volatile修饰
+    private volatile Typeb typeb;
     
+    // 被适配类实例在第一次使用时创建
+    public AdapterB2C() {}
+    public AdapterB2C(Typeb typeb) {
+        this.typeb = typeb;
+    }
+    // 双锁检测，保证并发首次使用时只创建一个Typeb，且其他线程看到的是构造完成的实例
+    Typeb typeb() {
+        Typeb result = typeb;
+        if(result == null) {
+            synchronized (this) {
+                result = typeb;
+                if(result == null) {
+                    typeb = result = new Typeb();
+                }
+            }
+        }
+        return result;
+    }
     @Override
     public void typecCharge() {
-        typeb.typebCharge();
+        typeb().typebCharge();
     }
     @Override
     public void typecDataTrans() {
-        typeb.typebDataTrans();
+        typeb().typebDataTrans();
+    }
+    @Override
+    public long typecDataTrans(ByteBuffer data, WritableByteChannel target) throws IOException {
+        return typeb().typebDataTrans(data, target);
+    }
+    // 文件通道交给Typeb按文件区间传输，其他通道经缓冲区逐段交给Typeb传输
+    @Override
+    public long typecDataTrans(ReadableByteChannel source, WritableByteChannel target) throws IOException {
+        if(source instanceof FileChannel) {
+            FileChannel file = (FileChannel) source;
+            long position = file.position();
+            long n = typeb().typebDataTrans(file, position, file.size() - position, target);
+            file.position(position + n);
+            return n;
+        }
+        return transferBuffered(source, target);
     }
 }
 
@@ -108,12 +322,21 @@ class AdapterB2C extends Typec{
  * 下例是Lightning类，使用Lightning方式的充电和数据传输方法。
  */
 class Lightning{
+    static final int MAX_PACKET_BYTES = 16 * 1024;
+    
     public void lightningCharge() {
         System.out.println("使用Lightning接口充电");
     }
     public void lightningDataTrans() {
         System.out.println("使用Lightning接口传输数据");
     }
+    // 传输一个数据包，数据包不能超过MAX_PACKET_BYTES字节
+    public int lightningDataTrans(ByteBuffer packet, WritableByteChannel target) throws IOException {
+        if(packet.remaining() > MAX_PACKET_BYTES) {
+            throw new IllegalArgumentException("数据包过大: " + packet.remaining());
+        }
+        return (int) Typec.writeFully(packet, target);
+    }
 }
 
 /**
@@ -121,14 +344,203 @@ class Lightning{
  * 下例是Lightning转Typec的适配器。
  */
 class AdapterL2C extends Typec{
-    Lightning ln = new Lightning();
+    // 共享的适配器会被多个线程同时使用，以volatile修饰
+    private volatile Lightning ln;
     
+    // 被适配类实例在第一次使用时创建
+    public AdapterL2C() {}
+    public AdapterL2C(Lightning ln) {
+        this.ln = ln;
+    }
+    // 双锁检测，保证并发首次使用时只创建一个Lightning
+    Lightning ln() {
+        Lightning result = ln;
+        if(result == null) {
+            synchronized (this) {
+                result = ln;
+                if(result == null) {
+                    ln = result = new Lightning();
+                }
+            }
+        }
+        return result;
+    }
     @Override
     public void typecCharge() {
-        ln.lightningCharge();;
+        ln().lightningCharge();
     }
     @Override
     public void typecDataTrans() {
-        ln.lightningDataTrans();
+        ln().lightningDataTrans();
+    }
+    // 按Lightning数据包的大小对缓冲区切片后逐包传输，不复制数据
+    @Override
+    public long typecDataTrans(ByteBuffer data, WritableByteChannel target) throws IOException {
+        long total = 0;
+        while(data.hasRemaining()) {
+            ByteBuffer packet = data.duplicate();
+            packet.limit(packet.position() + Math.min(packet.remaining(), Lightning.MAX_PACKET_BYTES));
+            int n = ln().lightningDataTrans(packet, target);
+            data.position(data.position() + n);
+            total += n;
+        }
+        return total;
+    }
+    // Lightning不支持直接传输文件区间，文件通道也经缓冲区读入后逐包传输
+    @Override
+    public long typecDataTrans(ReadableByteChannel source, WritableByteChannel target) throws IOException {
+        return transferBuffered(source, target);
+    }
+}
+
+/**
+ * 适配器注册表
+ * 以Map持有被适配类到适配器创建方法的登记。adapt根据对象的实际类型沿父类
+ * 链查找最近的登记项，对象本身就是Typec时原样返回。每个类的查找结果缓存在
+ * ClassValue中，之后同类对象的查找不再遍历父类链。登记新的适配器时整体
+ * 替换缓存，因此适合在启动时集中登记。
+ * 登记应在注册表投入使用之前全部完成。cache是volatile的，登记完成后开始的
+ * adapt一定使用新缓存；但与登记同时进行的adapt可能仍按旧缓存返回之前登记
+ * 的适配器(或报告没有适配器)，并且每次登记都会丢弃已缓存的全部查找结果。
+ */
+class AdapterRegistry{
+    // 未找到适配器时的占位结果
+    private static final Function<Object, Typec> NO_ADAPTER = source -> null;
+    
+    private final Map<Class<?>, Function<Object, Typec>> factories = new ConcurrentHashMap<>();
+    // 登记时整体替换，volatile保证adapt读到最新的缓存
+    private volatile ClassValue<Function<Object, Typec>> cache = newCache();
+    
+    // 登记被适配类的适配器创建方法，每次adapt创建一个持有该对象的适配器
+    public <S> void register(Class<S> type, Function<? super S, ? extends Typec> factory) {
+        factories.put(type, source -> factory.apply(type.cast(source)));
+        cache = newCache();
+    }
+    
+    // 登记无状态被适配类的共享适配器，所有该类对象都返回同一个适配器。
+    // 与register一样检查对象类型，查找出错时抛出ClassCastException而不是返回无关的适配器
+    public void registerShared(Class<?> type, Typec adapter) {
+        factories.put(type, source -> {
+            type.cast(source);
+            return adapter;
+        });
+        cache = newCache();
+    }
+    
+    public Typec adapt(Object source) {
+        Typec adapter = cache.get(source.getClass()).apply(source);
+        if(adapter == null) {
+            throw new IllegalArgumentException("没有可用的适配器: " + source.getClass().getName());
+        }
+        return adapter;
+    }
+    
+    private ClassValue<Function<Object, Typec>> newCache() {
+        return new ClassValue<Function<Object, Typec>>() {
+            @Override
+            protected Function<Object, Typec> computeValue(Class<?> type) {
+                if(Typec.class.isAssignableFrom(type)) {
+                    return source -> (Typec) source;
+                }
+                for(Class<?> c = type; c != null; c = c.getSuperclass()) {
+                    Function<Object, Typec> factory = factories.get(c);
+                    if(factory != null) {
+                        return factory;
+                    }
+                }
+                return NO_ADAPTER;
+            }
+        };
+    }
+}
+
+/**
+ * 异步目标类
+ * 与Typec的标准方法一一对应，但立即返回CompletableFuture，调用完成时
+ * future随之完成。
+ */
+abstract class AsyncTypec{
+    public abstract CompletableFuture<Void> typecCharge();
+    public abstract CompletableFuture<Void> typecDataTrans();
+    public abstract CompletableFuture<Long> typecDataTrans(ByteBuffer data, WritableByteChannel target);
+    public abstract CompletableFuture<Long> typecDataTrans(ReadableByteChannel source, WritableByteChannel target);
+}
+
+/**
+ * 异步适配器类
+ * 继承异步目标类，内部持有一个Typec(通常是包装了阻塞被适配类的适配器)，
+ * 每次调用提交到executor中执行。同时执行(含排队)的调用数不超过maxInFlight，
+ * 达到上限时新调用立即以RejectedExecutionException失败，由调用方决定重试
+ * 或降级，而不是无限排队。
+ */
+class AsyncTypecAdapter extends AsyncTypec{
+    private final Typec typec;
+    private final Executor executor;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    
+    public AsyncTypecAdapter(Typec typec, Executor executor, int maxInFlight) {
+        if(maxInFlight <= 0) {
+            throw new IllegalArgumentException("并发上限必须大于0: " + maxInFlight);
+        }
+        this.typec = typec;
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+    
+    @Override
+    public CompletableFuture<Void> typecCharge() {
+        return submit(() -> {
+            typec.typecCharge();
+            return null;
+        });
+    }
+    @Override
+    public CompletableFuture<Void> typecDataTrans() {
+        return submit(() -> {
+            typec.typecDataTrans();
+            return null;
+        });
+    }
+    @Override
+    public CompletableFuture<Long> typecDataTrans(ByteBuffer data, WritableByteChannel target) {
+        return submit(() -> typec.typecDataTrans(data, target));
+    }
+    @Override
+    public CompletableFuture<Long> typecDataTrans(ReadableByteChannel source, WritableByteChannel target) {
+        return submit(() -> typec.typecDataTrans(source, target));
+    }
+    
+    // 当前正在执行或排队的调用数
+    public int inFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+    
+    private <T> CompletableFuture<T> submit(Callable<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if(!inFlight.tryAcquire()) {
+            future.completeExceptionally(new RejectedExecutionException("并发调用数已达上限。"));
+            return future;
+        }
+        try {
+            // 先归还许可再完成future，调用方看到完成时许可一定已经归还
+            executor.execute(() -> {
+                T result;
+                try {
+                    result = call.call();
+                } catch (Throwable e) {
+                    inFlight.release();
+                    future.completeExceptionally(e);
+                    return;
+                }
+                inFlight.release();
+                future.complete(result);
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            future.completeExceptionally(e);
+        }
+        return future;
     }
 }
@@ -1,5 +1,32 @@
 package com.yukiyama.designpattern.structure;
 
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+import com.yukiyama.designpattern.concurrent.StripedCounter;
+
 /**
  * 桥接模式
  * 当一个事物可以通过多个维度描述时，要避免多个维度层层继承该事物的抽象类，
@@ -14,7 +41,16 @@ package com.yukiyama.designpattern.structure;
  * HuaweiPC类即可，无需改动其他类。同理希望增加视频软件时，也只需要增加
  * VideoPlayer类而无需关注品牌。这就是各自独立变化。另，本示例中主体事物
  * PC只持有一个Software实例，如果想同时持有多个Software实例，可以声明
- * 为集合类型(如List)，然后增加相应的add方法。
+ * 为集合类型(如List)，然后增加相应的add方法。MultiPC即是这样的主体事物，
+ * 它持有多个带优先级的Software，由固定个数的工作线程从优先队列中取出待
+ * 运行的软件并发运行，工作线程不够用时优先级高的软件先运行。run等全部
+ * 软件结束后返回，并统计每个软件的运行次数和累计耗时。
+ * PC的setSoftware直接写普通字段，其他线程正在run时替换软件并不安全。
+ * SwappablePC以AtomicReference持有软件，run无需加锁(无锁但不是无等待)，
+ * 替换软件后还可以等待仍在旧软件上执行的run全部结束。
+ * 软件的创建开销较大时，可以用SoftwarePool在启动后于后台预先创建并预热
+ * 若干软件实例，PooledPC每次run时从池中借出软件，运行后归还，池空时才
+ * 现场创建，并分别统计两种情况下的启动耗时。
  * 
  * 结构：
  * 抽象主体事物类
@@ -44,6 +80,37 @@ public class BridgeDemo {
         pc.setSoftware(soft2);
         // 输出"启动: MusicPlayer"
         pc.run();
+        // 同时持有多个软件的PC，按优先级并发运行
+        MultiPC multiPC = new MultiPC(2);
+        multiPC.addSoftware(new Browser(), 1);
+        multiPC.addSoftware(new MusicPlayer(), 5);
+        // 输出"启动: Browser"和"启动: MusicPlayer"，顺序取决于调度
+        multiPC.run();
+        // 输出各软件的运行次数和累计耗时
+        multiPC.printReport();
+        multiPC.shutdown();
+        // 运行中可安全替换软件的PC
+        SwappablePC swappablePC = new SwappablePC();
+        swappablePC.setSoftware(new Browser());
+        // 输出"启动: Browser"
+        swappablePC.run();
+        try {
+            // 替换为MusicPlayer并等待旧软件上的调用结束，输出“true”
+            System.out.println(swappablePC.swapAndDrain(new MusicPlayer(), 1, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 输出"启动: MusicPlayer"
+        swappablePC.run();
+        // 后台预先创建并预热2个Browser，等待预热完成
+        SoftwarePool pool = new SoftwarePool(Browser::new, 2);
+        pool.prewarm(ForkJoinPool.commonPool()).join();
+        PooledPC pooledPC = new PooledPC(pool);
+        // 两次运行都从池中借出预热好的软件，均输出"启动: Browser"
+        pooledPC.run();
+        pooledPC.run();
+        // 输出预热和现场创建两种情况的启动次数和平均耗时
+        pooledPC.printReport();
     }
 
 }
@@ -74,13 +141,434 @@ class ApplePC extends PC{
     }
 }
 
+/**
+ * 主体事物具体类
+ * 持有多个分离事物，每个Software带一个优先级(数值越大越优先)。run把每个
+ * 软件作为一个任务放入优先队列，由workers个工作线程按优先级从高到低取出
+ * 运行，同优先级按放入顺序。多个线程同时run或软件数超过工作线程数时，
+ * 排队的任务中优先级高的先运行，并发运行的软件数始终不超过workers。
+ * run等待本次放入的任务全部结束后返回，任一软件运行失败时在全部结束后
+ * 抛出异常。setSoftware等同于以优先级0添加软件。工作线程为守护线程，
+ * 不再使用时调用shutdown结束。
+ * 软件在工作线程中调用同一台MultiPC的run会等待排在自己之后的任务，工作
+ * 线程全部这样等待时就会死锁，因此这样的run直接抛出IllegalStateException。
+ * shutdown之后的run抛出RejectedExecutionException，且一个任务也不放入。
+ */
+class MultiPC extends PC{
+    // 当前线程所属的MultiPC，工作线程启动时设置
+    private static final ThreadLocal<MultiPC> OWNER = new ThreadLocal<>();
+    
+    private final ThreadPoolExecutor executor;
+    // run放入任务时持有读锁，shutdown持有写锁，使一次run的任务要么全部放入，
+    // 要么在shutdown之后一个也不放入
+    private final ReadWriteLock submission = new ReentrantReadWriteLock();
+    // 同优先级任务的放入顺序
+    private final AtomicLong sequence = new AtomicLong();
+    // 按优先级从高到低排列，添加软件时保持有序
+    private final List<Hosted> hosted = new CopyOnWriteArrayList<>();
+    
+    public MultiPC(int workers) {
+        if(workers <= 0) {
+            throw new IllegalArgumentException("工作线程数必须大于0: " + workers);
+        }
+        AtomicInteger threads = new AtomicInteger();
+        // 队列无界，核心线程数即最大线程数。预先启动全部工作线程，使每个
+        // 任务都先进入优先队列，而不是在线程数不足时直接交给新线程
+        this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), r -> {
+                    Thread t = new Thread(() -> {
+                        OWNER.set(this);
+                        r.run();
+                    }, "MultiPC-worker-" + threads.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.executor.prestartAllCoreThreads();
+    }
+    
+    @Override
+    public void setSoftware(Software soft) {
+        addSoftware(soft, 0);
+    }
+    
+    public synchronized void addSoftware(Software soft, int priority) {
+        int i = 0;
+        while(i < hosted.size() && hosted.get(i).priority >= priority) {
+            i++;
+        }
+        hosted.add(i, new Hosted(soft, priority));
+    }
+    
+    @Override
+    public void run() {
+        if(OWNER.get() == this) {
+            throw new IllegalStateException("不能在本MultiPC的工作线程中调用run，等待自身的任务会死锁。");
+        }
+        List<CompletableFuture<Void>> runs = new ArrayList<>(hosted.size());
+        submission.readLock().lock();
+        try {
+            if(executor.isShutdown()) {
+                throw new RejectedExecutionException("MultiPC已经shutdown。");
+            }
+            for(Hosted h : hosted) {
+                CompletableFuture<Void> future = new CompletableFuture<>();
+                executor.execute(new Task(h, sequence.getAndIncrement(), future));
+                runs.add(future);
+            }
+        } finally {
+            submission.readLock().unlock();
+        }
+        CompletableFuture.allOf(runs.toArray(new CompletableFuture<?>[0])).join();
+    }
+    
+    // 已放入队列、尚未开始运行的软件数
+    public int queued() {
+        return executor.getQueue().size();
+    }
+    
+    // 不再接受新的run，已排队的任务仍会运行
+    public void shutdown() {
+        submission.writeLock().lock();
+        try {
+            executor.shutdown();
+        } finally {
+            submission.writeLock().unlock();
+        }
+    }
+    
+    // 输出每个软件的优先级、运行次数和累计耗时(微秒)
+    public void printReport() {
+        for(Hosted h : hosted) {
+            System.out.printf("%s(优先级%d): %d次, %d us%n", h.soft.getName(), h.priority,
+                    h.runs.get(), h.nanos.get() / 1000);
+        }
+    }
+    
+    /**
+     * 被持有的软件及其优先级和运行统计
+     */
+    private static class Hosted{
+        private final Software soft;
+        private final int priority;
+        private final AtomicLong runs = new AtomicLong();
+        private final AtomicLong nanos = new AtomicLong();
+        
+        Hosted(Software soft, int priority) {
+            this.soft = soft;
+            this.priority = priority;
+        }
+        
+        void run() {
+            long start = System.nanoTime();
+            try {
+                soft.run();
+            } finally {
+                nanos.addAndGet(System.nanoTime() - start);
+                runs.incrementAndGet();
+            }
+        }
+    }
+    
+    /**
+     * 优先队列中的一次运行，优先级高的排在前面，同优先级先放入的排在前面。
+     * 通过execute提交，线程池把它原样放入PriorityBlockingQueue。
+     */
+    private static class Task implements Runnable, Comparable<Task>{
+        private final Hosted hosted;
+        private final long sequence;
+        private final CompletableFuture<Void> future;
+        
+        Task(Hosted hosted, long sequence, CompletableFuture<Void> future) {
+            this.hosted = hosted;
+            this.sequence = sequence;
+            this.future = future;
+        }
+        
+        @Override
+        public void run() {
+            try {
+                hosted.run();
+                future.complete(null);
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }
+        
+        @Override
+        public int compareTo(Task other) {
+            if(hosted.priority != other.hosted.priority) {
+                return Integer.compare(other.hosted.priority, hosted.priority);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
+
+/**
+ * 主体事物具体类
+ * 以AtomicReference持有当前软件及其正在执行的调用数。run读取当前软件并
+ * 登记调用，若登记期间软件恰好被替换则撤销登记后重读，因此替换一旦完成，
+ * 不会再有新的调用进入旧软件。swapAndDrain替换软件后等待旧软件上的调用
+ * 全部结束。
+ * run不加锁，但只是无锁(lock-free)而不是无等待(wait-free)：每次重读都
+ * 意味着有替换成功，整体总在前进，但替换持续发生时单个run的重读次数没有
+ * 上限。没有替换发生时run只需两次原子读和两次原子计数。
+ * 调用数记在分段计数器StripedCounter中，避免所有读线程争用同一个计数。
+ * swapAndDrain依赖以下不变式：一次run只在一个分段上先加一、结束后减一，
+ * 因此任何时刻每个分段的计数都不小于该分段上正在执行的旧软件调用数。
+ * 替换完成后，新的登记都会在重读时发现软件已被替换而撤销，不会进入旧软件。
+ * 所以在替换之后逐个读取各分段，读到某分段为0时该分段上已没有旧软件的
+ * 调用，此后也不会再有；全部分段都读到0，旧软件上的调用就已全部结束。
+ * 各分段之和不是原子快照，但这里不需要快照：替换后才登记的调用只会使某个
+ * 分段短暂加一，导致多重读一次，不会使结果提前为0。
+ * 分段之和在调用仍在执行时读到0，只可能发生在同一次调用的加一和减一
+ * 落在不同分段时(一个分段被多减而另一个分段的加一被抵消)，而run的登记
+ * 和撤销总在同一分段上，因此分段计数不影响排空的正确性。
+ */
+class SwappablePC extends PC{
+    private final AtomicReference<Slot> current = new AtomicReference<>();
+    
+    @Override
+    public void setSoftware(Software soft) {
+        swap(soft);
+    }
+    
+    // 替换软件并返回旧软件，不等待旧软件上的调用结束
+    public Software swap(Software soft) {
+        Slot old = current.getAndSet(new Slot(soft));
+        return old == null ? null : old.soft;
+    }
+    
+    // 替换软件，并在timeout内等待旧软件上的调用全部结束，超时返回false
+    public boolean swapAndDrain(Software soft, long timeout, TimeUnit unit) throws InterruptedException {
+        Slot old = current.getAndSet(new Slot(soft));
+        if(old == null) {
+            return true;
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int spins = 0;
+        while(old.calls.sum() > 0) {
+            if(Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if(System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            // 先短暂自旋让出CPU，之后退避为短时间休眠
+            if(++spins < 100) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+            }
+        }
+        return true;
+    }
+    
+    // 当前软件上正在执行的调用数，尚未设置软件时为0
+    public long inFlight() {
+        Slot slot = current.get();
+        return slot == null ? 0 : slot.calls.sum();
+    }
+    
+    @Override
+    public void run() {
+        Slot slot;
+        int stripe;
+        while(true) {
+            slot = current.get();
+            if(slot == null) {
+                throw new IllegalStateException("尚未设置软件。");
+            }
+            stripe = slot.calls.stripe();
+            slot.calls.increment(stripe);
+            if(current.get() == slot) {
+                break;
+            }
+            // 登记期间软件被替换，撤销后改用新软件
+            slot.calls.decrement(stripe);
+        }
+        try {
+            slot.soft.run();
+        } finally {
+            slot.calls.decrement(stripe);
+        }
+    }
+    
+    /**
+     * 软件及其正在执行的调用数
+     */
+    private static class Slot{
+        private final Software soft;
+        private final StripedCounter calls = new StripedCounter();
+        
+        Slot(Software soft) {
+            this.soft = soft;
+        }
+    }
+}
+
+/**
+ * 软件池
+ * 持有若干空闲的软件实例。prewarm在指定执行器中创建实例并调用其warmUp，
+ * 直到池满。poll取出一个空闲实例，池空时返回null，此时可用create现场创建
+ * (不预热)。用完的实例通过release归还，池满时丢弃。
+ * 池记住自己创建的实例及其状态(弱引用，不妨碍丢弃的实例被回收)，保证
+ * 空闲实例都已预热且在队列中只出现一次：归还未预热的实例时先在调用线程上
+ * 预热；归还不是本池创建的实例时抛出IllegalArgumentException；归还已经
+ * 空闲(重复归还)的实例时抛出IllegalStateException。
+ */
+class SoftwarePool{
+    private final Supplier<? extends Software> factory;
+    private final BlockingQueue<Software> idle;
+    // 本池创建的实例及其状态，Software未重写equals，按实例区分
+    private final Map<Software, State> created = Collections.synchronizedMap(new WeakHashMap<>());
+    
+    public SoftwarePool(Supplier<? extends Software> factory, int capacity) {
+        this.factory = factory;
+        this.idle = new ArrayBlockingQueue<>(capacity);
+    }
+    
+    // 在executor中预先创建并预热实例直到池满，返回的future在完成预热后完成
+    public CompletableFuture<Void> prewarm(Executor executor) {
+        return CompletableFuture.runAsync(() -> {
+            while(idle.remainingCapacity() > 0) {
+                Software soft = factory.get();
+                soft.warmUp();
+                created.put(soft, State.IDLE);
+                if(!idle.offer(soft)) {
+                    created.remove(soft);
+                    break;
+                }
+            }
+        }, executor);
+    }
+    
+    public Software poll() {
+        Software soft = idle.poll();
+        if(soft != null) {
+            created.put(soft, State.BORROWED);
+        }
+        return soft;
+    }
+    
+    public Software create() {
+        Software soft = factory.get();
+        created.put(soft, State.COLD);
+        return soft;
+    }
+    
+    public void release(Software soft) {
+        State state;
+        // 检查和改为空闲在同一个锁内完成，并发的重复归还只有一个能成功
+        synchronized (created) {
+            state = created.get(soft);
+            if(state == null) {
+                throw new IllegalArgumentException("只能归还本池创建的软件: " + soft.getName());
+            }
+            if(state == State.IDLE) {
+                throw new IllegalStateException("软件已经归还: " + soft.getName());
+            }
+            created.put(soft, State.IDLE);
+        }
+        if(state == State.COLD) {
+            soft.warmUp();
+        }
+        if(!idle.offer(soft)) {
+            created.remove(soft);
+        }
+    }
+    
+    private enum State{
+        // 现场创建、尚未预热，正被使用
+        COLD,
+        // 从池中借出，正被使用
+        BORROWED,
+        // 已预热，在池中空闲
+        IDLE
+    }
+}
+
+/**
+ * 主体事物具体类
+ * 不固定持有软件，每次run从软件池借出一个软件运行后归还。分别统计借到预热
+ * 实例(warm)和池空时现场创建(cold)两种情况下，从run开始到软件运行结束的
+ * 次数和耗时。软件只能由池提供，setSoftware抛出UnsupportedOperationException。
+ */
+class PooledPC extends PC{
+    private final SoftwarePool pool;
+    private final AtomicLong warmLaunches = new AtomicLong();
+    private final AtomicLong warmNanos = new AtomicLong();
+    private final AtomicLong coldLaunches = new AtomicLong();
+    private final AtomicLong coldNanos = new AtomicLong();
+    
+    public PooledPC(SoftwarePool pool) {
+        this.pool = pool;
+    }
+    
+    @Override
+    public void setSoftware(Software soft) {
+        throw new UnsupportedOperationException("PooledPC的软件由软件池提供。");
+    }
+    
+    @Override
+    public void run() {
+        long start = System.nanoTime();
+        Software soft = pool.poll();
+        boolean warm = soft != null;
+        if(!warm) {
+            soft = pool.create();
+        }
+        try {
+            soft.run();
+        } finally {
+            long nanos = System.nanoTime() - start;
+            if(warm) {
+                warmLaunches.incrementAndGet();
+                warmNanos.addAndGet(nanos);
+            } else {
+                coldLaunches.incrementAndGet();
+                coldNanos.addAndGet(nanos);
+            }
+            pool.release(soft);
+        }
+    }
+    
+    public long warmLaunches() {
+        return warmLaunches.get();
+    }
+    public long coldLaunches() {
+        return coldLaunches.get();
+    }
+    
+    // 输出预热和现场创建两种情况的启动次数和平均耗时(微秒)
+    public void printReport() {
+        long warm = warmLaunches.get();
+        long cold = coldLaunches.get();
+        System.out.printf("warm: %d次, 平均%d us%n", warm, warm == 0 ? 0 : warmNanos.get() / warm / 1000);
+        System.out.printf("cold: %d次, 平均%d us%n", cold, cold == 0 ? 0 : coldNanos.get() / cold / 1000);
+    }
+}
+
 /**
  * 抽象分离事物类
  * 有自身的属性和方法。
  * 下例是从软件维度描述PC的软件抽象类。
+ * 具体软件的run通过launch完成启动过程。warmUp把同样的启动过程执行一遍，
+ * 只是输出被丢弃：启动用到的类(字符串拼接、输出流及其字符编码器等)在预热
+ * 时加载和初始化，相关代码也被执行过，而不是缓存某个启动结果。run每次都按
+ * 当前名称生成启动信息，预热后改名也不会输出旧名称。
  */
 abstract class Software{
+    // 预热时的输出目标，丢弃写入的所有内容
+    private static final PrintStream DISCARD = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {}
+        @Override
+        public void write(byte[] b, int off, int len) {}
+    });
+    
     private String name;
+    private volatile boolean warm;
     
     public void setName(String name) {
         this.name = name;
@@ -89,6 +577,18 @@ abstract class Software{
         return name;
     }
     public abstract void run();
+    // 预热，由软件池在后台调用，执行一遍启动过程但不输出
+    public void warmUp() {
+        launch(DISCARD);
+        warm = true;
+    }
+    // 启动过程，向out输出按当前名称生成的启动信息
+    protected void launch(PrintStream out) {
+        out.println("启动: "+this.getName());
+    }
+    boolean isWarm() {
+        return warm;
+    }
 }
 
 /**
@@ -102,7 +602,7 @@ class Browser extends Software{
     }
     @Override
     public void run() {
-        System.out.println("启动: "+this.getName());
+        launch(System.out);
     }
 }
 
@@ -116,6 +616,6 @@ class MusicPlayer extends Software{
     }
     @Override
     public void run() {
-        System.out.println("启动: "+this.getName());
+        launch(System.out);
     }
 }
@@ -0,0 +1,40 @@
+package com.yukiyama.designpattern.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 基准测试入口
+ * 各基准测试与其测量的类放在同一个包中(便于访问包内可见的类)，类名以
+ * Benchmark结尾，不会被当作单元测试运行。通过bench profile运行：
+ *   mvn -P bench test -Dbench=OperationFactoryBenchmark
+ * 参数是匹配基准测试名的正则表达式，省略时运行全部。同时启用GC profiler，
+ * 结果中的gc.alloc.rate.norm即每次操作分配的字节数。
+ * 测量竞争时可以再给出以逗号分隔的线程数，按每个线程数各运行一遍：
+ *   mvn -P bench test -Dbench=SingletonContentionBenchmark -Dbench.threads=1,2,4,8
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : ".*Benchmark.*";
+        String threads = args.length > 1 ? args[1].trim() : "";
+        if(threads.isEmpty()) {
+            new Runner(options(include).build()).run();
+            return;
+        }
+        for(String count : threads.split(",")) {
+            new Runner(options(include).threads(Integer.parseInt(count.trim())).build()).run();
+        }
+    }
+
+    private static ChainedOptionsBuilder options(String include) {
+        return new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .shouldFailOnError(true);
+    }
+
+}
@@ -0,0 +1,84 @@
+package com.yukiyama.designpattern.concurrent;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class StripedCounterTest {
+
+    @Test
+    public void stripeSlotsAreCacheLinesApartWithPadding() {
+        StripedCounter counter = new StripedCounter(8);
+
+        assertEquals(StripedCounter.STRIDE, counter.slot(0));
+        for(int i = 1; i < counter.stripes(); i++) {
+            assertEquals(StripedCounter.STRIDE, counter.slot(i) - counter.slot(i - 1));
+        }
+        assertTrue(StripedCounter.STRIDE * Long.BYTES >= 128);
+        assertThrows(IndexOutOfBoundsException.class, () -> counter.slot(8));
+    }
+
+    @Test
+    public void defaultStripesCoverAllProcessors() {
+        int stripes = new StripedCounter().stripes();
+
+        assertEquals(1, Integer.bitCount(stripes));
+        assertTrue(stripes >= Runtime.getRuntime().availableProcessors());
+        assertThrows(IllegalArgumentException.class, () -> new StripedCounter(6));
+        assertThrows(IllegalArgumentException.class, () -> new StripedCounter(0));
+    }
+
+    @Test
+    public void sameThreadAlwaysUsesSameStripe() {
+        StripedCounter counter = new StripedCounter(16);
+        int stripe = counter.stripe();
+
+        assertTrue(stripe >= 0 && stripe < 16);
+        assertEquals(stripe, counter.stripe());
+    }
+
+    @Test
+    public void perStripeUpdatesSumAndSnapshot() {
+        StripedCounter counter = new StripedCounter(4);
+        counter.increment(0);
+        counter.add(2, 5);
+        counter.increment(3);
+        counter.decrement(3);
+
+        assertEquals(6, counter.sum());
+        assertArrayEquals(new long[] {1, 0, 5, 0}, counter.snapshot());
+        assertEquals(5, counter.get(2));
+        assertEquals(6, counter.sumThenReset());
+        assertEquals(0, counter.sum());
+    }
+
+    @Test(timeout = 30_000)
+    public void sumThenResetNeverLosesConcurrentIncrements() throws InterruptedException {
+        StripedCounter counter = new StripedCounter();
+        int threads = 8;
+        int increments = 200_000;
+        CountDownLatch done = new CountDownLatch(threads);
+        for(int i = 0; i < threads; i++) {
+            new Thread(() -> {
+                int stripe = counter.stripe();
+                for(int j = 0; j < increments; j++) {
+                    counter.increment(stripe);
+                }
+                done.countDown();
+            }).start();
+        }
+        long flushed = 0;
+        while(done.getCount() > 0) {
+            flushed += counter.sumThenReset();
+        }
+        done.await();
+        flushed += counter.sumThenReset();
+
+        assertEquals((long) threads * increments, flushed);
+    }
+}
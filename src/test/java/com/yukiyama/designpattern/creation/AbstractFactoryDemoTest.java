@@ -0,0 +1,168 @@
+package com.yukiyama.designpattern.creation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AbstractFactoryDemoTest {
+    private Path dir;
+    private Path cacheFile;
+    
+    @Before
+    public void createDir() throws IOException {
+        dir = Files.createTempDirectory("kernels");
+        cacheFile = dir.resolve("operation-kernels.properties");
+    }
+    
+    @After
+    public void deleteDir() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for(Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+    
+    @Test
+    public void addFactoryCreatesLongAndFloatProducts() {
+        IFactory factory = new OperationAddFactory();
+        
+        assertTrue(factory.createOperationLong() instanceof OperationLongAdd);
+        assertTrue(factory.createOperationFloat() instanceof OperationFloatAdd);
+        assertEquals(2L * Integer.MAX_VALUE, factory.createOperationLong().result(Integer.MAX_VALUE, Integer.MAX_VALUE));
+        assertEquals(1.75f, factory.createOperationFloat().result(1.5f, 0.25f), 0f);
+    }
+    
+    @Test
+    public void longAndFloatColumnsMatchScalarResults() {
+        IFactory factory = new OperationAddFactory();
+        
+        long[] longs = new long[4];
+        factory.createOperationLong().result(new long[] {Integer.MAX_VALUE, 2, -3},
+                new long[] {Integer.MAX_VALUE, 20, 30}, longs);
+        // out比a长时只写入前a.length个元素
+        assertArrayEquals(new long[] {2L * Integer.MAX_VALUE, 22, 27, 0}, longs);
+        
+        float[] floats = new float[2];
+        factory.createOperationFloat().result(new float[] {1.5f, -2f}, new float[] {0.25f, 2f}, floats);
+        assertArrayEquals(new float[] {1.75f, 0f}, floats, 0f);
+    }
+    
+    @Test
+    public void defaultColumnLoopCallsScalarResult() {
+        OperationLong max = new OperationLong() {
+            @Override
+            public long result(long a, long b) {
+                return Math.max(a, b);
+            }
+        };
+        OperationFloat mul = new OperationFloat() {
+            @Override
+            public float result(float a, float b) {
+                return a * b;
+            }
+        };
+        long[] longs = new long[3];
+        float[] floats = new float[3];
+        
+        max.result(new long[] {1, Long.MAX_VALUE, -5}, new long[] {3, 0, -9}, longs);
+        mul.result(new float[] {1.5f, -2f, 0f}, new float[] {2f, 0.5f, 7f}, floats);
+        
+        assertArrayEquals(new long[] {3, Long.MAX_VALUE, -5}, longs);
+        assertArrayEquals(new float[] {3f, -1f, 0f}, floats, 0f);
+    }
+    
+    @Test
+    public void longAndFloatColumnsRejectMismatchedLengths() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new OperationLongAdd().result(new long[2], new long[3], new long[3]));
+        assertThrows(IllegalArgumentException.class,
+                () -> new OperationFloatAdd().result(new float[2], new float[2], new float[1]));
+        assertThrows(IllegalArgumentException.class,
+                () -> new OperationLong() {
+                    @Override
+                    public long result(long a, long b) {
+                        return a - b;
+                    }
+                }.result(new long[3], new long[3], new long[2]));
+    }
+
+    @Test
+    public void unrolledKernelsMatchScalarIncludingTail() {
+        int[] a = new int[7];
+        int[] b = new int[7];
+        for(int i = 0; i < a.length; i++) {
+            a[i] = i;
+            b[i] = 10 * i;
+        }
+        int[] scalar = new int[7];
+        int[] unrolled = new int[7];
+        new OperationIntAdd().result(a, b, scalar);
+        new OperationIntAddUnrolled().result(a, b, unrolled);
+        assertArrayEquals(scalar, unrolled);
+        
+        double[] da = {0.5, 1.5, 2.5, 3.5, 4.5};
+        double[] scalarD = new double[5];
+        double[] unrolledD = new double[5];
+        new OperationDoubleAdd().result(da, da, scalarD);
+        new OperationDoubleAddUnrolled().result(da, da, unrolledD);
+        assertArrayEquals(scalarD, unrolledD, 0.0);
+        
+        assertThrows(IllegalArgumentException.class,
+                () -> new OperationIntAddUnrolled().result(new int[5], new int[5], new int[4]));
+    }
+    
+    @Test
+    public void nonDefaultCandidateNeedsMinimumMargin() {
+        assertEquals(0, CalibratedAddFactory.choose(new long[] {100, 95}, 0.10));
+        assertEquals(1, CalibratedAddFactory.choose(new long[] {100, 85}, 0.10));
+        assertEquals(0, CalibratedAddFactory.choose(new long[] {100, 120}, 0.10));
+        assertEquals(2, CalibratedAddFactory.choose(new long[] {100, 85, 60}, 0.10));
+    }
+    
+    @Test
+    public void calibrationIsWrittenAtomicallyAndReused() throws IOException {
+        new CalibratedAddFactory(cacheFile);
+        
+        Properties written = load();
+        String platform = CalibratedAddFactory.platform();
+        assertTrue(written.containsKey("add.int." + platform));
+        assertTrue(written.containsKey("add.double." + platform));
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for(Path file : files) {
+                assertEquals(cacheFile, file);
+            }
+        }
+        
+        written.setProperty("add.int." + platform, "unrolled");
+        written.setProperty("add.double." + platform, "scalar");
+        try (OutputStream out = Files.newOutputStream(cacheFile)) {
+            written.store(out, null);
+        }
+        IFactory factory = new CalibratedAddFactory(cacheFile);
+        assertTrue(factory.createOperationInt() instanceof OperationIntAddUnrolled);
+        assertTrue(factory.createOperationDouble() instanceof OperationDoubleAdd);
+    }
+    
+    private Properties load() throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(cacheFile)) {
+            properties.load(in);
+        }
+        return properties;
+    }
+}
@@ -0,0 +1,321 @@
+package com.yukiyama.designpattern.creation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BuilderDemoTest {
+    private Path file;
+    
+    @Before
+    public void createFile() throws IOException {
+        file = Files.createTempFile("cars", ".bin");
+    }
+    
+    @After
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+    
+    @Test
+    public void resetStartsNewCarAndKeepsTakenOne() {
+        Director director = new Director();
+        CarMaker maker = new F1CarMaker();
+        director.produce(maker);
+        Car first = maker.getCar();
+        
+        maker.reset();
+        assertEquals(0, maker.getCar().getParts().size());
+        director.produce(maker);
+        
+        assertNotSame(first, maker.getCar());
+        assertEquals(Arrays.asList("赛车轮胎", "赛车引擎", "赛车座椅"), first.getParts());
+        assertEquals(first.getParts(), maker.getCar().getParts());
+    }
+    
+    @Test
+    public void carStoresSharedPartIdsInsteadOfNames() {
+        Director director = new Director();
+        CarMaker maker = new HomeCarMaker();
+        director.produce(maker);
+        Car first = maker.getCar();
+        maker.reset();
+        director.produce(maker);
+        Car second = maker.getCar();
+        
+        assertEquals(3, first.encodedSize() / Car.PART_BYTES);
+        assertEquals(CarPart.HOME_SEATS.getId(), first.maxPartId());
+        // 名称都来自部件字典，两辆车得到的是同一个字符串实例
+        for(int i = 0; i < 3; i++) {
+            assertSame(PartDictionary.name(CarPart.HOME_WHEELS.getId() + i), first.getParts().get(i));
+            assertSame(first.getParts().get(i), second.getParts().get(i));
+        }
+    }
+    
+    @Test(timeout = 10_000)
+    public void asyncDirectorRunsIndependentStepsConcurrently() {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            // 轮胎和座椅互不依赖，只有二者同时执行时才能都通过屏障
+            CyclicBarrier together = new CyclicBarrier(2);
+            AtomicBoolean wheelsDone = new AtomicBoolean();
+            AtomicBoolean engineBeforeWheels = new AtomicBoolean();
+            AsyncDirector director = new AsyncDirector(executor).dependsOn(BuildStep.ENGINE, BuildStep.WHEELS);
+            Car car = director.produce(() -> new HomeCarMaker() {
+                @Override
+                public void buildWheels() {
+                    await(together);
+                    super.buildWheels();
+                    wheelsDone.set(true);
+                }
+                @Override
+                public void buildEngine() {
+                    engineBeforeWheels.compareAndSet(false, !wheelsDone.get());
+                    super.buildEngine();
+                }
+                @Override
+                public void buildSeats() {
+                    await(together);
+                    super.buildSeats();
+                }
+            }).join();
+            
+            assertFalse(engineBeforeWheels.get());
+            assertEquals(Arrays.asList("家用车轮胎", "家用车引擎", "家用车座椅"), car.getParts());
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    @Test
+    public void asyncDirectorRejectsCyclicDependencies() {
+        AsyncDirector director = new AsyncDirector(Runnable::run)
+                .dependsOn(BuildStep.ENGINE, BuildStep.WHEELS)
+                .dependsOn(BuildStep.SEATS, BuildStep.ENGINE);
+        
+        assertThrows(IllegalArgumentException.class, () -> director.dependsOn(BuildStep.WHEELS, BuildStep.SEATS));
+        assertThrows(IllegalArgumentException.class, () -> director.dependsOn(BuildStep.SEATS, BuildStep.SEATS));
+    }
+    
+    @Test
+    public void codecRoundTripsParts() {
+        Car car = new Car();
+        car.add(CarPart.HOME_ENGINE);
+        car.add("备用轮胎");
+        ByteBuffer buffer = ByteBuffer.allocate(car.encodedSize());
+        car.writeTo(buffer);
+        
+        assertFalse(buffer.hasRemaining());
+        buffer.flip();
+        assertEquals(car.getParts(), Car.readFrom(buffer).getParts());
+    }
+    
+    @Test
+    public void storeReadsRecordsAcrossSegmentsLazily() throws IOException {
+        // 每辆车7字节，写满一个映射窗口后还要继续写到下一个窗口
+        int cars = CarStoreWriter.SEGMENT_BYTES / 7 + 1000;
+        Car f1 = build(new F1CarMaker());
+        Car home = build(new HomeCarMaker());
+        Car big = new Car();
+        for(int i = 0; i < 255; i++) {
+            big.add(CarPart.values()[i % CarPart.values().length]);
+        }
+        try (CarStoreWriter writer = new CarStoreWriter(file)) {
+            for(int i = 0; i < cars; i++) {
+                writer.append(i % 1000 == 999 ? big : (i & 1) == 0 ? f1 : home);
+            }
+        }
+        
+        long expectedBytes = 0;
+        int read = 0;
+        try (CarStoreReader reader = new CarStoreReader(file)) {
+            while(reader.next()) {
+                Car expected = read % 1000 == 999 ? big : (read & 1) == 0 ? f1 : home;
+                assertEquals(expected.encodedSize() / Car.PART_BYTES, reader.partCount());
+                assertEquals(expected.getParts().get(0), reader.partName(0));
+                if(read % 1000 == 999) {
+                    assertEquals(big.getParts(), reader.toCar().getParts());
+                }
+                expectedBytes += expected.encodedSize();
+                read++;
+            }
+            assertFalse(reader.next());
+            assertThrows(IllegalStateException.class, reader::partCount);
+        }
+        assertEquals(cars, read);
+        // 记录之后是部件名称表
+        assertTrue(Files.size(file) > expectedBytes);
+    }
+    
+    @Test
+    public void carWithTooManyPartsCannotBeEncoded() {
+        Car car = new Car();
+        for(int i = 0; i < 256; i++) {
+            car.add(CarPart.HOME_SEATS);
+        }
+        assertThrows(IllegalStateException.class, () -> car.writeTo(ByteBuffer.allocate(car.encodedSize())));
+    }
+    
+    @Test
+    public void storeTranslatesIdsWrittenByAnotherProcess() throws IOException {
+        // 模拟另一个进程写入的文件：那个进程中编号0是一个本进程从未登记的名称，
+        // 编号1是赛车引擎，与本进程的编号都不相同
+        String foreign = "其他进程的部件-" + System.nanoTime();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(2);
+        out.writeShort(0);
+        out.writeShort(1);
+        int recordsEnd = out.size();
+        out.writeInt(2);
+        out.writeUTF(foreign);
+        out.writeUTF(CarPart.RACING_ENGINE.getLabel());
+        out.writeLong(recordsEnd);
+        Files.write(file, bytes.toByteArray());
+        int sizeBefore = PartDictionary.size();
+        
+        try (CarStoreReader reader = new CarStoreReader(file)) {
+            assertTrue(reader.next());
+            // 打开和遍历文件都不登记新名称
+            assertEquals(sizeBefore, PartDictionary.size());
+            assertEquals(foreign, reader.partName(0));
+            assertEquals(-1, reader.partId(0));
+            assertEquals(CarPart.RACING_ENGINE.getId(), reader.partId(1));
+            // 还原产品时才登记
+            assertEquals(Arrays.asList(foreign, "赛车引擎"), reader.toCar().getParts());
+            assertEquals(sizeBefore + 1, PartDictionary.size());
+            assertEquals(PartDictionary.lookup(foreign), reader.partId(0));
+            assertFalse(reader.next());
+        }
+    }
+    
+    @Test
+    public void storeRoundTripsRuntimeInternedNames() throws IOException {
+        Car car = new Car();
+        car.add("定制尾翼-" + System.nanoTime());
+        car.add(CarPart.HOME_SEATS);
+        try (CarStoreWriter writer = new CarStoreWriter(file)) {
+            writer.append(car);
+        }
+        try (CarStoreReader reader = new CarStoreReader(file)) {
+            assertTrue(reader.next());
+            assertEquals(car.getParts(), reader.toCar().getParts());
+        }
+    }
+    
+    @Test
+    public void storeWithoutDictionaryIsRejected() throws IOException {
+        Files.write(file, new byte[] {1, 0, 0});
+        assertThrows(IOException.class, () -> new CarStoreReader(file).close());
+    }
+    
+    @Test
+    public void openingForeignStoreDoesNotFillDictionary() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(1);
+        out.writeShort(0);
+        int recordsEnd = out.size();
+        int names = Short.MAX_VALUE + 1;
+        out.writeInt(names);
+        for(int i = 0; i < names; i++) {
+            out.writeUTF("损坏的名称-" + i);
+        }
+        out.writeLong(recordsEnd);
+        Files.write(file, bytes.toByteArray());
+        int sizeBefore = PartDictionary.size();
+        
+        for(int i = 0; i < 3; i++) {
+            try (CarStoreReader reader = new CarStoreReader(file)) {
+                assertTrue(reader.next());
+                assertEquals("损坏的名称-0", reader.partName(0));
+            }
+        }
+        
+        assertEquals(sizeBefore, PartDictionary.size());
+    }
+    
+    /**
+     * 堆占用对比，默认不运行：依赖System.gc()的结果，且需要较大的堆。
+     * 以-Dbuilder.footprint=true启用，builder.footprint.cars指定汽车数量
+     * (默认1000万)，与原先每辆车持有ArrayList<String>的布局比较堆占用，例如
+     *   mvn test -Dtest=BuilderDemoTest -Dbuilder.footprint=true -DargLine=-Xmx6g
+     */
+    @Test
+    public void dictionaryLayoutUsesLessHeapThanStringLists() {
+        assumeTrue("以-Dbuilder.footprint=true启用", Boolean.getBoolean("builder.footprint"));
+        int cars = Integer.getInteger("builder.footprint.cars", 10_000_000);
+        Object[] retained = new Object[cars];
+        Director director = new Director();
+        
+        long base = usedHeap();
+        for(int i = 0; i < cars; i++) {
+            List<String> parts = new ArrayList<>();
+            parts.add("赛车轮胎");
+            parts.add("赛车引擎");
+            parts.add("赛车座椅");
+            retained[i] = parts;
+        }
+        long listBytes = usedHeap() - base;
+        Arrays.fill(retained, null);
+        
+        base = usedHeap();
+        CarMaker maker = new F1CarMaker();
+        for(int i = 0; i < cars; i++) {
+            director.produce(maker);
+            retained[i] = maker.getCar();
+            maker.reset();
+        }
+        long carBytes = usedHeap() - base;
+        
+        assertEquals(CarPart.RACING_SEATS.getLabel(), ((Car) retained[cars - 1]).getParts().get(2));
+        System.out.printf("%d辆车：字典布局%d字节/辆，字符串列表%d字节/辆%n",
+                cars, carBytes / cars, listBytes / cars);
+        assertTrue("字典布局" + carBytes + "字节，字符串列表" + listBytes + "字节",
+                carBytes < listBytes * 3 / 4);
+    }
+    
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for(int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+    
+    private static Car build(CarMaker maker) {
+        new Director().produce(maker);
+        return maker.getCar();
+    }
+    
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await(5, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new IllegalStateException("独立步骤没有并发执行", e);
+        }
+    }
+}
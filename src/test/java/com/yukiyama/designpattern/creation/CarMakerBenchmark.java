@@ -0,0 +1,48 @@
+package com.yukiyama.designpattern.creation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 复用建造者建造一辆车的耗时和分配量，对照每辆车持有ArrayList<String>的
+ * 原布局。每次分配的字节数见GC profiler的gc.alloc.rate.norm，复用的建造者
+ * 只应分配Car对象和它的short数组。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CarMakerBenchmark {
+    private final Director director = new Director();
+    private final CarMaker maker = new HomeCarMaker();
+    
+    @Benchmark
+    public Car reusedMaker() {
+        director.produce(maker);
+        Car car = maker.getCar();
+        maker.reset();
+        return car;
+    }
+    
+    @Benchmark
+    public List<String> stringList() {
+        List<String> parts = new ArrayList<>();
+        parts.add(CarPart.HOME_WHEELS.getLabel());
+        parts.add(CarPart.HOME_ENGINE.getLabel());
+        parts.add(CarPart.HOME_SEATS.getLabel());
+        return parts;
+    }
+}
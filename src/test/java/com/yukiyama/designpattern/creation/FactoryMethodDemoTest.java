@@ -0,0 +1,114 @@
+package com.yukiyama.designpattern.creation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class FactoryMethodDemoTest {
+    
+    @Test
+    public void associativeReductionMatchesSequentialFold() {
+        int[] values = new Random(42).ints(100_003, -1000, 1000).toArray();
+        int sum = 0;
+        int product = 1;
+        for(int v : values) {
+            sum += v;
+            product *= v;
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(sum, OperReducer.reduce(new AddFactory(), values, 1000, pool));
+            assertEquals(product, OperReducer.reduce(new MulFactory(), values, 1, pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    @Test
+    public void nonAssociativeReductionFoldsLeftToRight() {
+        assertEquals(-13, OperReducer.reduce(new SubFactory(), new int[] {1, 2, 3, 4, 5}, 1,
+                ForkJoinPool.commonPool()));
+        // ((64/4)/2)/2 = 4，若右侧先合并会得到 64/(4/(2/2)) = 16
+        assertEquals(4, OperReducer.reduce(new DivFactory(), new int[] {64, 4, 2, 2}, 1,
+                ForkJoinPool.commonPool()));
+    }
+    
+    @Test
+    public void reduceRejectsEmptyArrayAndBadThreshold() {
+        assertThrows(IllegalArgumentException.class,
+                () -> OperReducer.reduce(new AddFactory(), new int[0], 1, ForkJoinPool.commonPool()));
+        assertThrows(IllegalArgumentException.class,
+                () -> OperReducer.reduce(new AddFactory(), new int[] {1}, 0, ForkJoinPool.commonPool()));
+    }
+    
+    @Test
+    public void indexResolvesBuiltInFactories() {
+        assertTrue(OperFactoryIndex.get("+") instanceof AddFactory);
+        assertTrue(OperFactoryIndex.get("-") instanceof SubFactory);
+        assertTrue(OperFactoryIndex.get("*") instanceof MulFactory);
+        assertTrue(OperFactoryIndex.get("/") instanceof DivFactory);
+        assertNotSame(OperFactoryIndex.get("+"), OperFactoryIndex.get("+"));
+    }
+    
+    @Test
+    public void indexDoesNotDiscoverUnregisteredFactories() {
+        assertNull(OperFactoryIndex.get("%"));
+        
+        OperFactoryIndex.register("%", () -> new OperFactory() {
+            @Override
+            public Oper createOper() {
+                return new Oper() {
+                    @Override
+                    public int result(int a, int b) {
+                        return a % b;
+                    }
+                };
+            }
+        });
+        assertEquals(1, OperFactoryIndex.get("%").createOper().result(7, 3));
+    }
+    
+    @Test
+    public void binderCreatesFreshProductsFromCachedFactory() {
+        OperFactory factory = OperFactoryBinder.bind(OperMul.class);
+        
+        assertSame(factory, OperFactoryBinder.bind(OperMul.class));
+        assertTrue(factory.createOper() instanceof OperMul);
+        assertNotSame(factory.createOper(), factory.createOper());
+        assertEquals(12, factory.createOper().result(3, 4));
+    }
+    
+    @Test
+    public void binderRejectsAbstractTypes() {
+        assertThrows(IllegalArgumentException.class, () -> OperFactoryBinder.bind(Oper.class));
+        assertThrows(IllegalArgumentException.class, () -> OperFactoryBinder.bind(AbstractOper.class));
+    }
+    
+    @Test
+    public void binderRejectsTypesWithoutNoArgConstructor() {
+        assertThrows(IllegalArgumentException.class, () -> OperFactoryBinder.bind(ScaledOper.class));
+    }
+    
+    abstract static class AbstractOper extends Oper{
+    }
+    
+    static class ScaledOper extends Oper{
+        private final int scale;
+        
+        ScaledOper(int scale) {
+            this.scale = scale;
+        }
+        @Override
+        public int result(int a, int b) {
+            return (a + b) * scale;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.yukiyama.designpattern.creation;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 比较创建Oper产品的几种方式：直接new、反射newInstance、MethodHandle和
+ * OperFactoryBinder绑定的工厂。
+ * warm*在预热后测量单次创建的平均耗时；firstCall*在新的JVM中只执行一次，
+ * 包含查找构造器、生成或绑定的开销和第一次创建。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class OperFactoryBinderBenchmark {
+    
+    @State(Scope.Benchmark)
+    public static class Warm {
+        // MethodHandle须保存在static final字段中，JIT才能把调用当作常量内联。
+        // 类型调整为()Oper，与invokeExact调用处的类型一致
+        static final MethodHandle CONSTRUCTOR;
+        
+        static {
+            try {
+                CONSTRUCTOR = MethodHandles.lookup().findConstructor(OperAdd.class, MethodType.methodType(void.class))
+                        .asType(MethodType.methodType(Oper.class));
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+        
+        Constructor<OperAdd> reflective;
+        OperFactory bound;
+        
+        @Setup
+        public void setUp() throws ReflectiveOperationException {
+            reflective = OperAdd.class.getDeclaredConstructor();
+            bound = OperFactoryBinder.bind(OperAdd.class);
+        }
+    }
+    
+    @Benchmark
+    public Oper warmDirectNew() {
+        return new OperAdd();
+    }
+    
+    @Benchmark
+    public Oper warmReflective(Warm warm) throws ReflectiveOperationException {
+        return warm.reflective.newInstance();
+    }
+    
+    @Benchmark
+    public Oper warmMethodHandle() throws Throwable {
+        return (Oper) Warm.CONSTRUCTOR.invokeExact();
+    }
+    
+    @Benchmark
+    public Oper warmMetafactory(Warm warm) {
+        return warm.bound.createOper();
+    }
+    
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(20)
+    public Oper firstCallReflective() throws ReflectiveOperationException {
+        return OperMul.class.getDeclaredConstructor().newInstance();
+    }
+    
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(20)
+    public Oper firstCallMethodHandle() throws Throwable {
+        MethodHandle constructor = MethodHandles.lookup().findConstructor(OperMul.class, MethodType.methodType(void.class));
+        return (Oper) constructor.invoke();
+    }
+    
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(20)
+    public Oper firstCallMetafactory() {
+        return OperFactoryBinder.bind(OperMul.class).createOper();
+    }
+}
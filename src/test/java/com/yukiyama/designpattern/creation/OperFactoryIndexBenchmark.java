@@ -0,0 +1,51 @@
+package com.yukiyama.designpattern.creation;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * 冷启动时按运算符取得全部四个工厂的耗时：编译期生成的索引，与按配置中的
+ * 类名Class.forName再反射调用构造器。每次测量都在新的JVM中只执行一次
+ * (SingleShotTime，无预热)，包含类加载和初始化，对应短命命令行工具的启动。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+public class OperFactoryIndexBenchmark {
+    private static final String[] KEYS = {"+", "-", "*", "/"};
+    // 反射方式的"配置"，只保存类名，不引用工厂类本身以免提前加载
+    private static final String[] CLASS_NAMES = {
+        "com.yukiyama.designpattern.creation.AddFactory",
+        "com.yukiyama.designpattern.creation.SubFactory",
+        "com.yukiyama.designpattern.creation.MulFactory",
+        "com.yukiyama.designpattern.creation.DivFactory",
+    };
+    
+    @Benchmark
+    public void generatedIndex(Blackhole bh) {
+        for(String key : KEYS) {
+            bh.consume(OperFactoryIndex.get(key).createOper().result(6, 3));
+        }
+    }
+    
+    @Benchmark
+    public void reflectiveLookup(Blackhole bh) throws ReflectiveOperationException {
+        for(String name : CLASS_NAMES) {
+            OperFactory factory = (OperFactory) Class.forName(name).getDeclaredConstructor().newInstance();
+            bh.consume(factory.createOper().result(6, 3));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.yukiyama.designpattern.creation;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 比较OperationFactory.operate(String)的选择分支加新建对象，与
+ * getOperation(char)查表返回共享实例。每次调用运算一次，四种运算符轮流
+ * 出现，避免JIT把运算符当作常量折叠。分配率见GC profiler的
+ * gc.alloc.rate.norm，查表一方应为0。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class OperationFactoryBenchmark {
+    private static final int OPS = 1024;
+    
+    private final String[] signs = new String[OPS];
+    private final char[] chars = new char[OPS];
+    private final int[] operands = new int[OPS];
+    
+    public OperationFactoryBenchmark() {
+        String all = "+-*/";
+        for(int i = 0; i < OPS; i++) {
+            chars[i] = all.charAt(i % all.length());
+            signs[i] = String.valueOf(chars[i]);
+            operands[i] = i + 1;
+        }
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(OPS)
+    public int switchAndNew() {
+        int sum = 0;
+        for(int i = 0; i < OPS; i++) {
+            sum += OperationFactory.operate(signs[i]).result(operands[i], 3);
+        }
+        return sum;
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(OPS)
+    public int sharedTable() {
+        int sum = 0;
+        for(int i = 0; i < OPS; i++) {
+            sum += OperationFactory.getOperation(chars[i]).result(operands[i], 3);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,178 @@
+package com.yukiyama.designpattern.creation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+
+import org.junit.Test;
+
+public class ProtoTypeDemoTest {
+    
+    @Test
+    public void lazyCloneSharesUntilFirstWrite() {
+        PersonDeep prototype = new PersonDeep();
+        prototype.setWorkExperienceDeep("Alibaba");
+        PersonDeep lazy = prototype.cloneLazy();
+        
+        assertEquals("Alibaba", lazy.getCompany());
+        lazy.setWorkExperienceDeep("Tencent");
+        
+        assertEquals("Alibaba", prototype.getCompany());
+        assertEquals("Tencent", lazy.getCompany());
+    }
+    
+    @Test
+    public void prototypeWriteDoesNotLeakIntoLazyClone() {
+        PersonDeep prototype = new PersonDeep();
+        prototype.setWorkExperienceDeep("Alibaba");
+        PersonDeep lazy = prototype.cloneLazy();
+        
+        prototype.setWorkExperienceDeep("Baidu");
+        
+        assertEquals("Alibaba", lazy.getCompany());
+        assertEquals("Baidu", prototype.getCompany());
+    }
+    
+    @Test
+    public void mutableGetterDetachesSharedWorkExperience() {
+        PersonDeep prototype = new PersonDeep();
+        prototype.setWorkExperienceDeep("Alibaba");
+        PersonDeep lazy = prototype.cloneLazy();
+        
+        WorkExperienceDeep own = lazy.getWorkExperience();
+        own.setCompany("JD");
+        
+        assertNotSame(own, prototype.getWorkExperience());
+        assertSame(own, lazy.getWorkExperience());
+        assertEquals("Alibaba", prototype.getCompany());
+    }
+    
+    @Test
+    public void registryClonesIntoRangeOnly() {
+        PersonDeep prototype = new PersonDeep();
+        prototype.setName("张三");
+        prototype.setWorkExperienceDeep("Alibaba");
+        PrototypeRegistry registry = new PrototypeRegistry();
+        registry.register("programmer", prototype);
+        PersonDeep[] team = new PersonDeep[5];
+        
+        registry.cloneInto("programmer", team, 1, 3);
+        
+        assertNull(team[0]);
+        assertNull(team[4]);
+        for(int i = 1; i < 4; i++) {
+            assertNotSame(prototype, team[i]);
+            assertEquals("张三", team[i].getName());
+            assertEquals("Alibaba", team[i].getCompany());
+        }
+        assertNotSame(team[1].getWorkExperience(), team[2].getWorkExperience());
+    }
+    
+    @Test
+    public void registryChecksTypeNameAndRange() {
+        PrototypeRegistry registry = new PrototypeRegistry();
+        registry.register("shallow", new Person());
+        
+        assertEquals(Person.class, registry.copy("shallow", Person.class).getClass());
+        assertThrows(IllegalArgumentException.class, () -> registry.copy("shallow", PersonDeep.class));
+        assertThrows(IllegalArgumentException.class, () -> registry.copy("missing", Person.class));
+        assertThrows(ArrayIndexOutOfBoundsException.class,
+                () -> registry.cloneInto("shallow", new Person[2], 1, 2));
+    }
+    
+    @Test
+    public void shallowBulkCopySharesWorkExperience() {
+        Person prototype = new Person();
+        prototype.setWorkExperience("Alibaba");
+        Person[] copies = new Person[2];
+        
+        prototype.copyInto(copies, 0, 2);
+        
+        assertSame(prototype.getWorkExperience(), copies[0].getWorkExperience());
+        assertSame(prototype.getWorkExperience(), copies[1].getWorkExperience());
+    }
+    
+    @Test
+    public void generatedPersonCopierCopiesMutableAndSharesImmutable() {
+        Person prototype = new Person();
+        prototype.setName("张三");
+        prototype.setAge(30);
+        prototype.setWorkExperience("Alibaba");
+        prototype.setCountry("CHINA");
+        
+        Person copy = PersonCopier.copy(prototype);
+        copy.setWorkExperience("Baidu");
+        
+        assertEquals("张三", copy.getName());
+        assertEquals(30, copy.getAge());
+        assertSame(prototype.country, copy.country);
+        assertNotSame(prototype.getWorkExperience(), copy.getWorkExperience());
+        assertEquals("Alibaba", prototype.getWorkExperience().getCompany());
+    }
+    
+    @Test
+    public void generatedPersonDeepCopierDoesNotCopySharedFlag() {
+        PersonDeep prototype = new PersonDeep();
+        prototype.setWorkExperienceDeep("Alibaba");
+        prototype.cloneLazy();
+        
+        PersonDeep copy = PersonDeepCopier.copy(prototype);
+        
+        assertFalse(copy.workExperienceShared);
+        assertNotSame(prototype.workExperience, copy.workExperience);
+        assertEquals("Alibaba", copy.getCompany());
+    }
+    
+    @Test
+    public void storeClonesPrototypeAcrossSegments() {
+        Person person = new Person();
+        person.setName("张三");
+        person.setOccupation("程序员");
+        person.setAge(28);
+        person.setWorkExperience("Alibaba");
+        person.setCountry("CHINA");
+        PersonStore store = new PersonStore(4);
+        int prototype = store.add(person);
+        
+        int first = store.cloneOf(prototype, 10);
+        
+        assertEquals(1, first);
+        assertEquals(11, store.size());
+        PersonView view = store.view(first);
+        for(int i = first; i < store.size(); i++) {
+            store.view(i, view);
+            assertEquals("张三", view.getName());
+            assertEquals("程序员", view.getOccupation());
+            assertEquals(28, view.getAge());
+            assertEquals("Alibaba", view.getCompany());
+            assertEquals("CHINA", view.getCountry());
+        }
+    }
+    
+    @Test
+    public void storeCopiesAreIndependentAndKeepNulls() {
+        PersonStore store = new PersonStore(2);
+        int prototype = store.add(new Person());
+        int copy = store.cloneOf(prototype, 1);
+        
+        store.view(copy).setName("王五");
+        
+        assertNull(store.view(prototype).getName());
+        assertNull(store.view(prototype).getCountry());
+        assertEquals("王五", store.view(copy).getName());
+    }
+    
+    @Test
+    public void storeChecksIndexAndCount() {
+        PersonStore store = new PersonStore(2);
+        store.add(new Person());
+        
+        assertThrows(IndexOutOfBoundsException.class, () -> store.view(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> store.cloneOf(-1, 1));
+        assertThrows(IllegalArgumentException.class, () -> store.cloneOf(0, 0));
+        assertThrows(IllegalArgumentException.class, () -> new PersonStore(0));
+    }
+}
@@ -0,0 +1,98 @@
+package com.yukiyama.designpattern.creation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.yukiyama.designpattern.creation.copy.DeepCopyable;
+
+/**
+ * 深拷贝一个PersonDeep的四种方式：重写的Object.clone、手写的拷贝构造
+ * (逐个字段赋值)、注解处理器生成的PersonDeepCopier，以及序列化往返。
+ * 另测注册表cloneInto一次拷贝BATCH份的平均耗时。每次拷贝分配的字节数
+ * 见GC profiler的gc.alloc.rate.norm。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class PrototypeCopyBenchmark {
+    private static final int BATCH = 1024;
+
+    private PersonDeep prototype;
+    private PrototypeRegistry registry;
+    private final PersonDeep[] team = new PersonDeep[BATCH];
+
+    @Setup
+    public void setUp() {
+        prototype = new PersonDeep();
+        prototype.setName("张三");
+        prototype.setOccupation("程序员");
+        prototype.setAge(30);
+        prototype.setWorkExperienceDeep("Alibaba");
+        registry = new PrototypeRegistry();
+        registry.register("programmer", prototype);
+    }
+
+    @Benchmark
+    public PersonDeep objectClone() {
+        return (PersonDeep) prototype.clone();
+    }
+
+    @Benchmark
+    public PersonDeep copyConstructor() {
+        return copyByHand(prototype);
+    }
+
+    @Benchmark
+    public PersonDeep generatedCopier() {
+        return PersonDeepCopier.copy(prototype);
+    }
+
+    @Benchmark
+    public PersonDeep serializationRoundTrip() throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try(ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(prototype);
+        }
+        try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (PersonDeep) in.readObject();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public PersonDeep[] registryCloneInto() {
+        registry.cloneInto("programmer", team, 0, BATCH);
+        return team;
+    }
+
+    // 与原先的拷贝构造器相同：不变类型共享引用，workExperience拷贝出新实例
+    private static PersonDeep copyByHand(PersonDeep other) {
+        PersonDeep person = new PersonDeep(DeepCopyable.Blank.INSTANCE);
+        person.name = other.name;
+        person.occupation = other.occupation;
+        person.age = other.age;
+        WorkExperienceDeep workExperience = new WorkExperienceDeep();
+        workExperience.company = other.workExperience.company;
+        person.workExperience = workExperience;
+        return person;
+    }
+}
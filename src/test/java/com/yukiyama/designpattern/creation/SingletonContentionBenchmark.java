@@ -0,0 +1,74 @@
+package com.yukiyama.designpattern.creation;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 多个线程同时反复获取已构造好的单例时各写法的耗时，即getInstance快速路径
+ * 在竞争下的开销。默认以全部CPU核运行，按线程数1..N分别测量时使用
+ *   mvn -P bench test -Dbench=SingletonContentionBenchmark -Dbench.threads=1,2,4,8
+ * 注册表的get每次都进入synchronized块，随线程数增加应明显变慢；其他写法的
+ * 快速路径只读共享的引用，耗时应与线程数基本无关。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@Threads(Threads.MAX)
+public class SingletonContentionBenchmark {
+    private SingletonRegistry registry;
+
+    @Setup
+    public void setUp() {
+        registry = new SingletonRegistry(new Properties());
+        registry.register("hungry", SingletonHungry.class, SingletonHungry::getInstance);
+        // 先构造好各懒汉单例，只测量快速路径
+        Singleton.getInstance();
+        SingletonAcquireRelease.getInstance();
+        SingletonHolder.getInstance();
+    }
+
+    @Benchmark
+    public SingletonHungry hungry() {
+        return SingletonHungry.getInstance();
+    }
+
+    @Benchmark
+    public Singleton doubleCheckedLocking() {
+        return Singleton.getInstance();
+    }
+
+    @Benchmark
+    public SingletonAcquireRelease acquireRelease() {
+        return SingletonAcquireRelease.getInstance();
+    }
+
+    @Benchmark
+    public SingletonHolder holder() {
+        return SingletonHolder.getInstance();
+    }
+
+    @Benchmark
+    public SingletonEnum enumConstant() {
+        return SingletonEnum.INSTANCE;
+    }
+
+    @Benchmark
+    public SingletonHungry registry() {
+        return registry.get("hungry", SingletonHungry.class);
+    }
+}
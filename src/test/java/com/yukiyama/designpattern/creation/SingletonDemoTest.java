@@ -0,0 +1,287 @@
+package com.yukiyama.designpattern.creation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.yukiyama.designpattern.testing.Races;
+
+public class SingletonDemoTest {
+    private static final int THREADS = 64;
+    
+    private static final int ROUNDS = 20;
+    
+    // SingletonSimple不是线程安全的写法，并发首次访问时可能构造多次，不在此验证
+    
+    @Test(timeout = 60_000)
+    public void doubleCheckedLockingConstructsOnce() throws Exception {
+        assertFirstAccessesAgree(Singleton.class, "getInstance");
+    }
+    
+    @Test(timeout = 60_000)
+    public void acquireReleaseConstructsOnce() throws Exception {
+        assertFirstAccessesAgree(SingletonAcquireRelease.class, "getInstance");
+        assertSame(SingletonAcquireRelease.getInstance(), SingletonAcquireRelease.getInstance());
+    }
+    
+    @Test(timeout = 60_000)
+    public void holderConstructsOnce() throws Exception {
+        assertFirstAccessesAgree(SingletonHolder.class, "getInstance");
+    }
+    
+    @Test(timeout = 60_000)
+    public void hungryConstructsOnce() throws Exception {
+        assertFirstAccessesAgree(SingletonHungry.class, "getInstance");
+    }
+    
+    @Test(timeout = 60_000)
+    public void enumConstructsOnce() throws Exception {
+        assertFirstAccessesAgree(SingletonEnum.class, "INSTANCE");
+    }
+    
+    @Test
+    public void threadsMapToOneInstancePerStripe() throws InterruptedException {
+        int stripes = StripedSingleton.snapshot().length;
+        assertEquals(1, Integer.bitCount(stripes));
+        assertTrue(stripes >= Runtime.getRuntime().availableProcessors());
+        
+        Set<StripedSingleton> instances = new HashSet<>();
+        Thread[] threads = new Thread[stripes * 8];
+        for(int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                StripedSingleton instance = StripedSingleton.getInstance();
+                assertSame(instance, StripedSingleton.getInstance());
+                synchronized (instances) {
+                    instances.add(instance);
+                }
+            });
+        }
+        for(Thread thread : threads) {
+            thread.start();
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        Set<Integer> stripeIds = new HashSet<>();
+        for(StripedSingleton instance : instances) {
+            assertTrue(instance.stripe() >= 0 && instance.stripe() < stripes);
+            assertTrue(stripeIds.add(instance.stripe()));
+        }
+    }
+    
+    @Test(timeout = 30_000)
+    public void flushNeverLosesConcurrentIncrements() throws InterruptedException {
+        StripedSingleton.flush();
+        int threads = 8;
+        int increments = 200_000;
+        CountDownLatch done = new CountDownLatch(threads);
+        for(int i = 0; i < threads; i++) {
+            new Thread(() -> {
+                StripedSingleton stripe = StripedSingleton.getInstance();
+                for(int j = 0; j < increments; j++) {
+                    stripe.increment();
+                }
+                done.countDown();
+            }).start();
+        }
+        long flushed = 0;
+        while(done.getCount() > 0) {
+            flushed += StripedSingleton.flush();
+        }
+        done.await();
+        flushed += StripedSingleton.flush();
+        
+        assertEquals((long) threads * increments, flushed);
+        assertEquals(0, StripedSingleton.sum());
+    }
+    
+    @Test
+    public void sameThreadAlwaysGetsSameStripe() {
+        assertSame(StripedSingleton.getInstance(), StripedSingleton.getInstance());
+    }
+    
+    @Test
+    public void eagerSingletonIsBuiltOnRegister() {
+        AtomicInteger builds = new AtomicInteger();
+        SingletonRegistry registry = new SingletonRegistry(new Properties());
+        
+        registry.register("service", StringBuilder.class, () -> counted(builds));
+        
+        assertEquals(1, builds.get());
+        assertSame(registry.get("service", StringBuilder.class), registry.get("service", StringBuilder.class));
+        assertEquals(1, builds.get());
+    }
+    
+    @Test
+    public void lazySingletonIsBuiltOnFirstGetOnly() {
+        AtomicInteger builds = new AtomicInteger();
+        SingletonRegistry registry = new SingletonRegistry(config("service", SingletonRegistry.LAZY));
+        
+        registry.register("service", StringBuilder.class, () -> counted(builds));
+        assertEquals(0, builds.get());
+        
+        registry.get("service", StringBuilder.class);
+        registry.get("service", StringBuilder.class);
+        assertEquals(1, builds.get());
+    }
+    
+    @Test(timeout = 10_000)
+    public void backgroundSingletonIsBuiltWithoutGet() throws InterruptedException {
+        CountDownLatch built = new CountDownLatch(1);
+        AtomicInteger builds = new AtomicInteger();
+        SingletonRegistry registry = new SingletonRegistry(config("service", SingletonRegistry.BACKGROUND));
+        
+        registry.register("service", StringBuilder.class, () -> {
+            StringBuilder instance = counted(builds);
+            built.countDown();
+            return instance;
+        });
+        
+        built.await();
+        registry.get("service", StringBuilder.class);
+        assertEquals(1, builds.get());
+    }
+    
+    @Test(timeout = 30_000)
+    public void backgroundRegistriesShareOneDaemonThreadThatExitsWhenIdle() throws InterruptedException {
+        int registries = 50;
+        CountDownLatch built = new CountDownLatch(registries);
+        for(int i = 0; i < registries; i++) {
+            SingletonRegistry registry = new SingletonRegistry(config("service", SingletonRegistry.BACKGROUND));
+            registry.register("service", StringBuilder.class, () -> {
+                built.countDown();
+                return new StringBuilder();
+            });
+        }
+        built.await();
+        assertTrue(warmupThreads() <= 1);
+        
+        while(warmupThreads() > 0) {
+            Thread.sleep(100);
+        }
+    }
+    
+    @Test(timeout = 30_000)
+    public void concurrentLazyGetsBuildOnce() throws InterruptedException {
+        AtomicInteger builds = new AtomicInteger();
+        SingletonRegistry registry = new SingletonRegistry(config("service", SingletonRegistry.LAZY));
+        registry.register("service", StringBuilder.class, () -> counted(builds));
+        
+        Races.sameInstance(THREADS, () -> registry.get("service", StringBuilder.class));
+        
+        assertEquals(1, builds.get());
+    }
+    
+    @Test
+    public void registryRejectsBadModesNamesAndFailures() {
+        SingletonRegistry registry = new SingletonRegistry(config("broken", SingletonRegistry.LAZY));
+        registry.register("service", String.class, () -> "x");
+        registry.register("broken", String.class, () -> {
+            throw new IllegalStateException("boom");
+        });
+        
+        assertThrows(IllegalArgumentException.class, () -> registry.register("service", String.class, () -> "y"));
+        assertThrows(IllegalArgumentException.class, () -> registry.get("missing", String.class));
+        assertThrows(IllegalStateException.class, () -> registry.get("broken", String.class));
+        SingletonRegistry misconfigured = new SingletonRegistry(config("service", "sometimes"));
+        assertThrows(IllegalArgumentException.class, () -> misconfigured.register("service", String.class, () -> "x"));
+        assertThrows(IllegalArgumentException.class, () -> misconfigured.get("service", String.class));
+    }
+    
+    private static StringBuilder counted(AtomicInteger builds) {
+        builds.incrementAndGet();
+        return new StringBuilder();
+    }
+    
+    private static long warmupThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(t -> t.getName().equals("singleton-warmup") && t.isDaemon()).count();
+    }
+    
+    private static Properties config(String name, String mode) {
+        Properties config = new Properties();
+        config.setProperty(name, mode);
+        return config;
+    }
+    
+    /**
+     * 单例类本身不含计数器，构造次数从外部观察：每一轮在新的类加载器中重新
+     * 加载type(及其嵌套类)，THREADS个线程同时通过accessor(静态方法或静态
+     * 字段)首次访问它。构造实例的线程总是拿到自己构造的实例，因此构造两次
+     * 必然有线程拿到不同的实例，Races.sameInstance会发现。每轮都是该类在新
+     * 加载器中的首次访问，与测试顺序和其他测试是否访问过该类无关。
+     */
+    private static void assertFirstAccessesAgree(Class<?> type, String accessor) throws Exception {
+        for(int round = 0; round < ROUNDS; round++) {
+            Class<?> isolated = isolate(type);
+            assertFalse(isolated == type);
+            Member member = accessor.equals("INSTANCE")
+                    ? isolated.getField(accessor) : isolated.getMethod(accessor);
+            ((AccessibleObject) member).setAccessible(true);
+            Object instance = Races.sameInstance(THREADS, () -> {
+                try {
+                    return member instanceof Field ? ((Field) member).get(null) : ((Method) member).invoke(null);
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            assertSame(isolated, instance.getClass());
+        }
+    }
+    
+    // 在新的类加载器中加载type及其嵌套类，其他类仍委托给原加载器；不初始化type
+    private static Class<?> isolate(Class<?> type) throws ClassNotFoundException {
+        String name = type.getName();
+        ClassLoader loader = new ClassLoader(type.getClassLoader()) {
+            @Override
+            protected Class<?> loadClass(String className, boolean resolve) throws ClassNotFoundException {
+                if(!className.equals(name) && !className.startsWith(name + "$")) {
+                    return super.loadClass(className, resolve);
+                }
+                synchronized (getClassLoadingLock(className)) {
+                    Class<?> loaded = findLoadedClass(className);
+                    if(loaded == null) {
+                        byte[] bytes = classBytes(getParent(), className);
+                        loaded = defineClass(className, bytes, 0, bytes.length);
+                    }
+                    return loaded;
+                }
+            }
+        };
+        return Class.forName(name, false, loader);
+    }
+    
+    private static byte[] classBytes(ClassLoader loader, String className) throws ClassNotFoundException {
+        try (InputStream in = loader.getResourceAsStream(className.replace('.', '/') + ".class")) {
+            if(in == null) {
+                throw new ClassNotFoundException(className);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for(int n; (n = in.read(buffer)) > 0; ) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
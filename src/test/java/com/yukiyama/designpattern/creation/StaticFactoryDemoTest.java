@@ -0,0 +1,213 @@
+package com.yukiyama.designpattern.creation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StaticFactoryDemoTest {
+    private Path in;
+    private Path out;
+    
+    @Before
+    public void createFiles() throws IOException {
+        in = Files.createTempFile("operations", ".bin");
+        out = Files.createTempFile("results", ".bin");
+    }
+    
+    @After
+    public void deleteFiles() throws IOException {
+        Files.deleteIfExists(in);
+        Files.deleteIfExists(out);
+    }
+    
+    @Test
+    public void getOperationReturnsSharedInstances() {
+        assertSame(OperationFactory.getOperation('+'), OperationFactory.getOperation('+'));
+        assertEquals(7, OperationFactory.getOperation('+').result(3, 4));
+        assertEquals(-1, OperationFactory.getOperation('-').result(3, 4));
+        assertEquals(12, OperationFactory.getOperation('*').result(3, 4));
+        assertEquals(2, OperationFactory.getOperation('/').result(8, 4));
+    }
+    
+    @Test
+    public void unknownOrOutOfRangeSignReturnsNull() {
+        assertNull(OperationFactory.getOperation('^'));
+        assertNull(OperationFactory.getOperation('\u4e58'));
+    }
+    
+    @Test
+    public void registerAddsOperatorAtRuntime() {
+        Operation max = new Operation() {
+            @Override
+            public int result(int a, int b) {
+                return Math.max(a, b);
+            }
+        };
+        OperationFactory.register('@', max);
+        
+        assertSame(max, OperationFactory.getOperation('@'));
+        assertEquals(9, OperationFactory.getOperation('@').result(9, 4));
+    }
+    
+    @Test
+    public void registerRejectsNonAsciiSign() {
+        assertThrows(IllegalArgumentException.class,
+                () -> OperationFactory.register('\u4e58', new OperationMul()));
+    }
+    
+    @Test
+    public void batchResultMatchesScalarForEveryOperation() {
+        int[] a = {7, -3, Integer.MAX_VALUE, 0, 100, 9};
+        int[] b = {2, 5, 1, -4, -7, 3};
+        for(char sign : new char[] {'+', '-', '*', '/'}) {
+            Operation oper = OperationFactory.getOperation(sign);
+            int[] out = new int[a.length];
+            oper.result(a, b, out, 1, 4);
+            
+            assertEquals(0, out[0]);
+            for(int i = 1; i < 5; i++) {
+                assertEquals(oper.result(a[i], b[i]), out[i]);
+            }
+            assertEquals(0, out[5]);
+        }
+    }
+    
+    @Test
+    public void batchResultChecksRangeBeforeWriting() {
+        int[] out = new int[3];
+        assertThrows(ArrayIndexOutOfBoundsException.class,
+                () -> new OperationAdd().result(new int[] {1, 2, 3}, new int[] {1, 2}, out, 0, 3));
+        assertArrayEquals(new int[3], out);
+    }
+    
+    @Test
+    public void batchDivisionWritesZeroDivValueAndCountsZeros() {
+        int[] out = new int[4];
+        int zeros = new OperationDiv().result(new int[] {8, 5, 9, 1}, new int[] {2, 0, 3, 0}, out, 0, 4, -1);
+        
+        assertEquals(2, zeros);
+        assertArrayEquals(new int[] {4, -1, 3, -1}, out);
+    }
+    
+    @Test
+    public void heapIntBufferUsesBackingArrays() {
+        IntBuffer a = IntBuffer.wrap(new int[] {1, 2, 3, 4});
+        IntBuffer b = IntBuffer.wrap(new int[] {10, 20, 30, 40});
+        IntBuffer out = IntBuffer.allocate(4);
+        new OperationMul().result(a, b, out);
+        
+        assertFalse(a.hasRemaining());
+        assertEquals(4, out.position());
+        assertArrayEquals(new int[] {10, 40, 90, 160}, out.array());
+    }
+    
+    @Test
+    public void directIntBufferIsEvaluatedInChunks() {
+        int n = 3000;
+        IntBuffer a = ByteBuffer.allocateDirect(n * 4).asIntBuffer();
+        IntBuffer b = ByteBuffer.allocateDirect(n * 4).asIntBuffer();
+        IntBuffer out = ByteBuffer.allocateDirect(n * 4).asIntBuffer();
+        for(int i = 0; i < n; i++) {
+            a.put(i, i);
+            b.put(i, n - i);
+        }
+        new OperationSub().result(a, b, out);
+        
+        assertEquals(n, out.position());
+        for(int i = 0; i < n; i++) {
+            assertEquals(2 * i - n, out.get(i));
+        }
+    }
+    
+    @Test
+    public void intBufferRejectsMismatchedLengths() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new OperationAdd().result(IntBuffer.allocate(3), IntBuffer.allocate(2), IntBuffer.allocate(3)));
+    }
+    
+    @Test
+    public void evaluatesRecordsAcrossChunks() throws IOException {
+        int n = 10_007;
+        ByteBuffer records = ByteBuffer.allocate(n * OperationFileEvaluator.RECORD_BYTES);
+        int[] expected = new int[n];
+        String signs = "+-*/";
+        for(int i = 0; i < n; i++) {
+            char sign = signs.charAt(i % 4);
+            records.putInt(i).putChar(sign).putInt(3);
+            expected[i] = OperationFactory.getOperation(sign).result(i, 3);
+        }
+        Files.write(in, records.array());
+        
+        long zeroDivs = OperationFileEvaluator.evaluate(in, out, ForkJoinPool.commonPool(), 777);
+        
+        assertEquals(0, zeroDivs);
+        assertArrayEquals(expected, readResults());
+    }
+    
+    @Test
+    public void zeroDivisorWritesZeroAndIsCounted() throws IOException {
+        ByteBuffer records = ByteBuffer.allocate(3 * OperationFileEvaluator.RECORD_BYTES);
+        records.putInt(8).putChar('/').putInt(0);
+        records.putInt(8).putChar('/').putInt(2);
+        records.putInt(5).putChar('/').putInt(0);
+        Files.write(in, records.array());
+        
+        long zeroDivs = OperationFileEvaluator.evaluate(in, out, ForkJoinPool.commonPool());
+        
+        assertEquals(2, zeroDivs);
+        assertArrayEquals(new int[] {0, 4, 0}, readResults());
+    }
+    
+    @Test
+    public void unknownOperatorReportsRecordAndDeletesOutput() throws IOException {
+        ByteBuffer records = ByteBuffer.allocate(3 * OperationFileEvaluator.RECORD_BYTES);
+        records.putInt(1).putChar('+').putInt(1);
+        records.putInt(1).putChar('+').putInt(1);
+        records.putInt(1).putChar('?').putInt(1);
+        Files.write(in, records.array());
+        
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> OperationFileEvaluator.evaluate(in, out, ForkJoinPool.commonPool()));
+        
+        // fork-join可能在调用线程重新包装异常，只检查消息中的记录下标
+        assertTrue(e.getMessage().contains("第2条记录的运算符不支持: ?"));
+        assertFalse(Files.exists(out));
+    }
+    
+    @Test
+    public void missingOrMalformedInputKeepsExistingOutput() throws IOException {
+        byte[] previous = {1, 2, 3, 4};
+        Files.write(out, previous);
+        Files.delete(in);
+        
+        assertThrows(IOException.class, () -> OperationFileEvaluator.evaluate(in, out, ForkJoinPool.commonPool()));
+        assertArrayEquals(previous, Files.readAllBytes(out));
+        
+        Files.write(in, new byte[OperationFileEvaluator.RECORD_BYTES + 1]);
+        assertThrows(IllegalArgumentException.class,
+                () -> OperationFileEvaluator.evaluate(in, out, ForkJoinPool.commonPool()));
+        assertArrayEquals(previous, Files.readAllBytes(out));
+    }
+    
+    private int[] readResults() throws IOException {
+        IntBuffer results = ByteBuffer.wrap(Files.readAllBytes(out)).asIntBuffer();
+        int[] values = new int[results.remaining()];
+        results.get(values);
+        return values;
+    }
+}
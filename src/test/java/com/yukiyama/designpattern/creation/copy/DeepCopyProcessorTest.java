@@ -0,0 +1,140 @@
+package com.yukiyama.designpattern.creation.copy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.yukiyama.designpattern.testing.ProcessorCompiler;
+
+public class DeepCopyProcessorTest {
+    private Path dir;
+    private ProcessorCompiler compiler;
+
+    @Before
+    public void createDir() throws IOException {
+        dir = Files.createTempDirectory("copier");
+        compiler = new ProcessorCompiler(dir, DeepCopyProcessor.class);
+    }
+
+    @After
+    public void deleteDir() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void generatesStraightLineCopier() throws IOException {
+        List<String> errors = compiler.compile("sample.Item",
+                "package sample;",
+                "import com.yukiyama.designpattern.creation.copy.*;",
+                "import com.yukiyama.designpattern.creation.copy.CopyPolicy.Policy;",
+                "@DeepCopyable class Part { String label; }",
+                "@DeepCopyable class Item {",
+                "    int count;",
+                "    String name;",
+                "    @CopyPolicy(Policy.DEEP) int[] sizes;",
+                "    @CopyPolicy(Policy.DEEP) Part part;",
+                "    @CopyPolicy(Policy.SHALLOW) java.util.List<String> tags;",
+                "    @CopyPolicy(Policy.SKIP) Object cache;",
+                "}");
+
+        assertEquals(new ArrayList<String>(), errors);
+        String copier = compiler.generated("sample.ItemCopier");
+        assertTrue(copier, copier.contains("final class ItemCopier {") && !copier.contains("public"));
+        assertTrue(copier, copier.contains("sample.Item copy = new sample.Item();"));
+        assertTrue(copier, copier.contains("copy.count = source.count;"));
+        assertTrue(copier, copier.contains("copy.sizes = source.sizes == null ? null : source.sizes.clone();"));
+        assertTrue(copier, copier.contains("sample.PartCopier.copy(source.part)"));
+        assertTrue(copier, copier.contains("copy.tags = source.tags;"));
+        assertTrue(copier, !copier.contains("cache"));
+        assertTrue(copier, !copier.contains("reflect") && !copier.contains("catch"));
+    }
+
+    @Test
+    public void publicTypeGetsPublicCopier() throws IOException {
+        List<String> errors = compiler.compile("sample.Item",
+                "package sample;",
+                "@com.yukiyama.designpattern.creation.copy.DeepCopyable public class Item { String name; }");
+
+        assertEquals(new ArrayList<String>(), errors);
+        String copier = compiler.generated("sample.ItemCopier");
+        assertTrue(copier, copier.contains("public final class ItemCopier {"));
+        assertTrue(copier, copier.contains("public static sample.Item copy(sample.Item source) {"));
+    }
+
+    @Test
+    public void blankConstructorIsPreferredOverNoArgConstructor() throws IOException {
+        List<String> errors = compiler.compile("sample.Item",
+                "package sample;",
+                "import com.yukiyama.designpattern.creation.copy.*;",
+                "@DeepCopyable class Part { String label; }",
+                "@DeepCopyable class Item {",
+                "    @CopyPolicy(CopyPolicy.Policy.DEEP) Part part;",
+                "    Item() { part = new Part(); }",
+                "    Item(DeepCopyable.Blank blank) {}",
+                "}",
+                "@DeepCopyable class Bare {",
+                "    Bare(DeepCopyable.Blank blank) {}",
+                "}");
+
+        assertEquals(new ArrayList<String>(), errors);
+        assertTrue(compiler.generated("sample.ItemCopier").contains(
+                "new sample.Item(com.yukiyama.designpattern.creation.copy.DeepCopyable.Blank.INSTANCE);"));
+        assertTrue(compiler.generated("sample.BareCopier").contains(
+                "new sample.Bare(com.yukiyama.designpattern.creation.copy.DeepCopyable.Blank.INSTANCE);"));
+    }
+
+    @Test
+    public void mutableFieldWithoutPolicyIsRejected() throws IOException {
+        assertError("可变引用类型的字段需要用@CopyPolicy指定拷贝方式",
+                "@com.yukiyama.designpattern.creation.copy.DeepCopyable class Item { StringBuilder text; }");
+    }
+
+    @Test
+    public void privateOrFinalCopiedFieldIsRejected() throws IOException {
+        assertError("要拷贝的字段不能是private或final",
+                "@com.yukiyama.designpattern.creation.copy.DeepCopyable class Item { private String name; }");
+        assertError("要拷贝的字段不能是private或final",
+                "@com.yukiyama.designpattern.creation.copy.DeepCopyable class Item { final int count = 1; }");
+    }
+
+    @Test
+    public void deepFieldOfUnannotatedTypeIsRejected() throws IOException {
+        assertError("DEEP字段的类型须是@DeepCopyable类",
+                "import com.yukiyama.designpattern.creation.copy.*;",
+                "@DeepCopyable class Item { @CopyPolicy(CopyPolicy.Policy.DEEP) StringBuilder text; }");
+    }
+
+    @Test
+    public void typeWithoutNoArgConstructorOrWithSuperclassIsRejected() throws IOException {
+        assertError("非private的无参构造器或空白构造器",
+                "@com.yukiyama.designpattern.creation.copy.DeepCopyable class Item { Item(int n) {} }");
+        assertError("非private的无参构造器或空白构造器",
+                "import com.yukiyama.designpattern.creation.copy.DeepCopyable;",
+                "@DeepCopyable class Item { private Item(DeepCopyable.Blank blank) {} }");
+        assertError("不能继承其他类",
+                "@com.yukiyama.designpattern.creation.copy.DeepCopyable class Item extends Thread {}");
+    }
+
+    // 在sample包中编译Item，断言只有一个含expected的错误
+    private void assertError(String expected, String... source) throws IOException {
+        String[] lines = new String[source.length + 1];
+        lines[0] = "package sample;";
+        System.arraycopy(source, 0, lines, 1, source.length);
+        List<String> errors = compiler.compile("sample.Item", lines);
+        assertEquals(errors.toString(), 1, errors.size());
+        assertTrue(errors.get(0), errors.get(0).contains(expected));
+    }
+}
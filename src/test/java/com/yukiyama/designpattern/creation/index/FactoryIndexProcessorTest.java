@@ -0,0 +1,90 @@
+package com.yukiyama.designpattern.creation.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.yukiyama.designpattern.testing.ProcessorCompiler;
+
+public class FactoryIndexProcessorTest {
+    private Path dir;
+    private ProcessorCompiler compiler;
+    
+    @Before
+    public void createDir() throws IOException {
+        dir = Files.createTempDirectory("index");
+        compiler = new ProcessorCompiler(dir, FactoryIndexProcessor.class);
+    }
+    
+    @After
+    public void deleteDir() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+    
+    @Test
+    public void generatesSortedConstructorReferences() throws IOException {
+        List<String> errors = compiler.compile("sample.Shapes",
+                "package sample;",
+                "import com.yukiyama.designpattern.creation.index.IndexedFactory;",
+                "abstract class Shape {}",
+                "@IndexedFactory(value = \"square\", base = Shape.class) class Square extends Shape {}",
+                "@IndexedFactory(value = \"circle\", base = Shape.class) class Circle extends Shape {}",
+                "class Shapes {",
+                "    java.util.function.Supplier<Shape> circle = ShapeGeneratedIndex.factories().get(\"circle\");",
+                "}");
+        
+        assertEquals(new ArrayList<String>(), errors);
+        String index = compiler.generated("sample.ShapeGeneratedIndex");
+        int circle = index.indexOf("factories.put(\"circle\", sample.Circle::new);");
+        int square = index.indexOf("factories.put(\"square\", sample.Square::new);");
+        assertTrue(index, circle > 0 && square > circle);
+        assertTrue(index, !index.contains("forName") && !index.contains("reflect"));
+    }
+    
+    @Test
+    public void duplicateKeyIsRejected() throws IOException {
+        assertError("已由sample.Square使用",
+                "package sample;",
+                "import com.yukiyama.designpattern.creation.index.IndexedFactory;",
+                "abstract class Shape {}",
+                "@IndexedFactory(value = \"s\", base = Shape.class) class Square extends Shape {}",
+                "@IndexedFactory(value = \"s\", base = Shape.class) class Star extends Shape {}");
+    }
+    
+    @Test
+    public void abstractOrUnrelatedOrConstructorlessTypeIsRejected() throws IOException {
+        assertError("不能是抽象类",
+                "package sample;",
+                "@com.yukiyama.designpattern.creation.index.IndexedFactory(value = \"s\", base = Shape.class)",
+                "abstract class Shape {}");
+        assertError("须是sample.Shape的子类",
+                "package sample;",
+                "class Shape {}",
+                "@com.yukiyama.designpattern.creation.index.IndexedFactory(value = \"s\", base = Shape.class)",
+                "class Square {}");
+        assertError("无参构造器",
+                "package sample;",
+                "class Shape {}",
+                "@com.yukiyama.designpattern.creation.index.IndexedFactory(value = \"s\", base = Shape.class)",
+                "class Square extends Shape { private Square() {} }");
+    }
+    
+    private void assertError(String expected, String... source) throws IOException {
+        List<String> errors = compiler.compile("sample.Shape", source);
+        assertEquals(errors.toString(), 1, errors.size());
+        assertTrue(errors.get(0), errors.get(0).contains(expected));
+    }
+}
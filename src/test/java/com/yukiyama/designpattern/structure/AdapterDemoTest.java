@@ -0,0 +1,371 @@
+package com.yukiyama.designpattern.structure;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.Pipe;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.yukiyama.designpattern.testing.Races;
+
+public class AdapterDemoTest {
+    
+    @Test
+    public void registryFindsNearestRegisteredSuperclass() {
+        AdapterRegistry registry = new AdapterRegistry();
+        AtomicReference<Lightning> adapted = new AtomicReference<>();
+        registry.register(Lightning.class, ln -> {
+            adapted.set(ln);
+            return new AdapterL2C(ln);
+        });
+        Lightning cable = new Lightning() {};
+        
+        Typec adapter = registry.adapt(cable);
+        
+        assertTrue(adapter instanceof AdapterL2C);
+        assertSame(cable, adapted.get());
+        assertSame(cable, ((AdapterL2C) adapter).ln());
+        assertNotSame(adapter, registry.adapt(cable));
+    }
+    
+    @Test
+    public void registrySharesStatelessAdapterAndPassesTypecThrough() {
+        AdapterRegistry registry = new AdapterRegistry();
+        AdapterB2C shared = new AdapterB2C();
+        registry.registerShared(Typeb.class, shared);
+        HuaweiTypeC huawei = new HuaweiTypeC();
+        
+        assertSame(shared, registry.adapt(new Typeb()));
+        assertSame(shared, registry.adapt(new Typeb()));
+        assertSame(huawei, registry.adapt(huawei));
+    }
+    
+    @Test
+    public void registryRejectsUnknownTypesUntilRegistered() {
+        AdapterRegistry registry = new AdapterRegistry();
+        Lightning cable = new Lightning();
+        assertThrows(IllegalArgumentException.class, () -> registry.adapt(cable));
+        
+        registry.register(Lightning.class, AdapterL2C::new);
+        
+        assertTrue(registry.adapt(cable) instanceof AdapterL2C);
+    }
+    
+    @Test(timeout = 30_000)
+    public void sharedAdapterCreatesOneAdapteeUnderConcurrentFirstUse() throws InterruptedException {
+        for(int round = 0; round < 200; round++) {
+            AdapterB2C b2c = new AdapterB2C();
+            AdapterL2C l2c = new AdapterL2C();
+            Races.sameInstance(8, b2c::typeb);
+            Races.sameInstance(8, l2c::ln);
+        }
+    }
+    
+    @Test
+    public void defaultChannelTransferCopiesEverything() throws IOException {
+        byte[] data = randomBytes(3 * Typec.TRANSFER_BUFFER_BYTES + 17);
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        
+        long n = new HuaweiTypeC().typecDataTrans(stream(data), Channels.newChannel(received));
+        
+        assertEquals(data.length, n);
+        assertArrayEquals(data, received.toByteArray());
+    }
+    
+    @Test
+    public void nonBlockingChannelsAreRejected() throws IOException {
+        Pipe pipe = Pipe.open();
+        try {
+            pipe.sink().configureBlocking(false);
+            pipe.source().configureBlocking(false);
+            Typec typec = new HuaweiTypeC();
+            
+            assertThrows(IllegalArgumentException.class,
+                    () -> typec.typecDataTrans(ByteBuffer.allocate(8), pipe.sink()));
+            assertThrows(IllegalArgumentException.class,
+                    () -> typec.typecDataTrans(pipe.source(), Channels.newChannel(new ByteArrayOutputStream())));
+            assertThrows(IllegalArgumentException.class,
+                    () -> new AdapterL2C().typecDataTrans(stream(new byte[8]), pipe.sink()));
+        } finally {
+            pipe.sink().close();
+            pipe.source().close();
+        }
+    }
+    
+    @Test(timeout = 10_000)
+    public void channelsThatNeverMoveDataFailInsteadOfSpinning() {
+        WritableByteChannel stuckTarget = new WritableByteChannel() {
+            public int write(ByteBuffer src) { return 0; }
+            public boolean isOpen() { return true; }
+            public void close() {}
+        };
+        ReadableByteChannel stuckSource = new ReadableByteChannel() {
+            public int read(ByteBuffer dst) { return 0; }
+            public boolean isOpen() { return true; }
+            public void close() {}
+        };
+        Typec typec = new HuaweiTypeC();
+        
+        assertThrows(IOException.class, () -> typec.typecDataTrans(ByteBuffer.allocate(8), stuckTarget));
+        assertThrows(IOException.class,
+                () -> typec.typecDataTrans(stuckSource, Channels.newChannel(new ByteArrayOutputStream())));
+    }
+    
+    @Test
+    public void occasionalZeroByteReadsAreRetriedNotTransferred() throws IOException {
+        byte[] data = randomBytes(1000);
+        ReadableByteChannel source = stream(data);
+        AtomicInteger reads = new AtomicInteger();
+        ReadableByteChannel hesitant = new ReadableByteChannel() {
+            public int read(ByteBuffer dst) throws IOException {
+                return reads.incrementAndGet() % 2 == 1 ? 0 : source.read(dst);
+            }
+            public boolean isOpen() { return true; }
+            public void close() {}
+        };
+        List<Integer> packets = new ArrayList<>();
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        Typec recording = new HuaweiTypeC() {
+            @Override
+            public long typecDataTrans(ByteBuffer packet, WritableByteChannel target) throws IOException {
+                packets.add(packet.remaining());
+                return super.typecDataTrans(packet, target);
+            }
+        };
+        
+        assertEquals(data.length, recording.typecDataTrans(hesitant, Channels.newChannel(received)));
+        assertArrayEquals(data, received.toByteArray());
+        assertFalse(packets.contains(0));
+    }
+    
+    @Test
+    public void b2cSendsFileRegionsToTypebAndReusesBufferForStreams() throws IOException {
+        List<ByteBuffer> buffers = new ArrayList<>();
+        AtomicInteger fileCalls = new AtomicInteger();
+        Typeb typeb = new Typeb() {
+            @Override
+            public long typebDataTrans(FileChannel source, long position, long count,
+                    WritableByteChannel target) throws IOException {
+                fileCalls.incrementAndGet();
+                return super.typebDataTrans(source, position, count, target);
+            }
+            @Override
+            public long typebDataTrans(ByteBuffer data, WritableByteChannel target) throws IOException {
+                buffers.add(data);
+                return super.typebDataTrans(data, target);
+            }
+        };
+        AdapterB2C adapter = new AdapterB2C(typeb);
+        byte[] data = randomBytes(100_000);
+        Path file = Files.createTempFile("typeb", ".bin");
+        try {
+            Files.write(file, data);
+            ByteArrayOutputStream received = new ByteArrayOutputStream();
+            try (FileChannel channel = FileChannel.open(file)) {
+                channel.position(10);
+                assertEquals(data.length - 10, adapter.typecDataTrans(channel, Channels.newChannel(received)));
+                assertEquals(data.length, channel.position());
+            }
+            assertEquals(1, fileCalls.get());
+            assertEquals(data.length - 10, received.size());
+        } finally {
+            Files.delete(file);
+        }
+        
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        adapter.typecDataTrans(stream(data), Channels.newChannel(received));
+        adapter.typecDataTrans(stream(data), Channels.newChannel(received));
+        
+        assertEquals(2 * data.length, received.size());
+        assertTrue(buffers.size() >= 4);
+        for(ByteBuffer buffer : buffers) {
+            assertTrue(buffer.isDirect());
+            assertSame(buffers.get(0), buffer);
+        }
+    }
+    
+    @Test
+    public void l2cSendsEveryChannelThroughLightningPackets() throws IOException {
+        AtomicInteger largest = new AtomicInteger();
+        Lightning lightning = new Lightning() {
+            @Override
+            public int lightningDataTrans(ByteBuffer packet, WritableByteChannel target) throws IOException {
+                largest.accumulateAndGet(packet.remaining(), Math::max);
+                return super.lightningDataTrans(packet, target);
+            }
+        };
+        byte[] data = randomBytes(5 * Lightning.MAX_PACKET_BYTES + 3);
+        Path file = Files.createTempFile("lightning", ".bin");
+        try {
+            Files.write(file, data);
+            ByteArrayOutputStream received = new ByteArrayOutputStream();
+            try (FileChannel channel = FileChannel.open(file)) {
+                new AdapterL2C(lightning).typecDataTrans(channel, Channels.newChannel(received));
+            }
+            assertArrayEquals(data, received.toByteArray());
+            assertEquals(Lightning.MAX_PACKET_BYTES, largest.get());
+        } finally {
+            Files.delete(file);
+        }
+    }
+    
+    @Test(timeout = 10_000)
+    public void asyncAdapterRejectsCallsBeyondLimitUntilOneCompletes() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        Typec blocking = new HuaweiTypeC() {
+            @Override
+            public void typecCharge() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            AsyncTypecAdapter async = new AsyncTypecAdapter(blocking, executor, 2);
+            CompletableFuture<Void> first = async.typecCharge();
+            CompletableFuture<Void> second = async.typecCharge();
+            started.await();
+            
+            CompletableFuture<Void> rejected = async.typecCharge();
+            
+            assertEquals(2, async.inFlight());
+            assertTrue(rejected.isCompletedExceptionally());
+            CompletionException e = assertThrows(CompletionException.class, rejected::join);
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+            assertFalse(first.isDone());
+            
+            release.countDown();
+            first.join();
+            second.join();
+            assertEquals(0, async.inFlight());
+            async.typecCharge().join();
+            assertEquals(0, async.inFlight());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+    
+    @Test(timeout = 10_000)
+    public void asyncAdapterCompletesWithResultOrFailure() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            AsyncTypecAdapter async = new AsyncTypecAdapter(new HuaweiTypeC(), executor, 1);
+            ByteArrayOutputStream received = new ByteArrayOutputStream();
+            WritableByteChannel target = Channels.newChannel(received);
+            
+            assertEquals(Long.valueOf(5), async.typecDataTrans(ByteBuffer.wrap(new byte[5]), target).join());
+            assertEquals(5, received.size());
+            
+            CompletableFuture<Void> failed = new AsyncTypecAdapter(new HuaweiTypeC() {
+                @Override
+                public void typecDataTrans() {
+                    throw new IllegalStateException("断开");
+                }
+            }, executor, 1).typecDataTrans();
+            CompletionException e = assertThrows(CompletionException.class, failed::join);
+            assertTrue(e.getCause() instanceof IllegalStateException);
+            assertEquals(0, async.inFlight());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    @Test
+    public void asyncChannelTransferGoesThroughAdapteeAndHoldsAPermit() throws InterruptedException {
+        byte[] data = randomBytes(2 * Typec.TRANSFER_BUFFER_BYTES + 5);
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ReadableByteChannel source = stream(data);
+        ReadableByteChannel gated = new ReadableByteChannel() {
+            public int read(ByteBuffer dst) throws IOException {
+                reading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return source.read(dst);
+            }
+            public boolean isOpen() { return true; }
+            public void close() {}
+        };
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            AsyncTypecAdapter async = new AsyncTypecAdapter(new AdapterL2C(), executor, 1);
+            CompletableFuture<Long> transfer = async.typecDataTrans(gated, Channels.newChannel(received));
+            reading.await();
+            
+            assertEquals(1, async.inFlight());
+            CompletableFuture<Long> rejected = async.typecDataTrans(stream(data), Channels.newChannel(received));
+            CompletionException e = assertThrows(CompletionException.class, rejected::join);
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+            
+            release.countDown();
+            assertEquals(Long.valueOf(data.length), transfer.join());
+            assertArrayEquals(data, received.toByteArray());
+            assertEquals(0, async.inFlight());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    @Test
+    public void asyncAdapterReleasesPermitWhenExecutorRejects() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        AsyncTypecAdapter async = new AsyncTypecAdapter(new HuaweiTypeC(), executor, 1);
+        
+        for(int i = 0; i < 3; i++) {
+            CompletableFuture<Void> future = async.typecCharge();
+            CompletionException e = assertThrows(CompletionException.class, future::join);
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+            assertEquals(0, async.inFlight());
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> new AsyncTypecAdapter(new HuaweiTypeC(), executor, 0));
+    }
+    
+    private static ReadableByteChannel stream(byte[] data) {
+        return Channels.newChannel(new ByteArrayInputStream(data));
+    }
+    
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+}
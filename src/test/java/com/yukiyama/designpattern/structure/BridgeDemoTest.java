@@ -0,0 +1,396 @@
+package com.yukiyama.designpattern.structure;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class BridgeDemoTest {
+    
+    private final List<MultiPC> pcs = new ArrayList<>();
+    
+    @After
+    public void shutdown() {
+        for(MultiPC pc : pcs) {
+            pc.shutdown();
+        }
+    }
+    
+    @Test(timeout = 10_000)
+    public void multiPCRunsQueuedSoftwareByPriorityUnderContention() throws InterruptedException {
+        MultiPC pc = multiPC(1);
+        CountDownLatch blocking = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        // 第一次运行时占住唯一的工作线程，之后的运行只记录顺序
+        pc.addSoftware(new Recording("blocker", order) {
+            private final AtomicInteger calls = new AtomicInteger();
+            @Override
+            public void run() {
+                if(calls.getAndIncrement() == 0) {
+                    blocking.countDown();
+                    await(release);
+                } else {
+                    super.run();
+                }
+            }
+        }, 0);
+        Thread first = start(pc);
+        blocking.await();
+        
+        pc.addSoftware(new Recording("low", order), 1);
+        Thread second = start(pc);
+        awaitQueued(pc, 2);
+        pc.addSoftware(new Recording("high", order), 5);
+        Thread third = start(pc);
+        awaitQueued(pc, 5);
+        release.countDown();
+        first.join();
+        second.join();
+        third.join();
+        
+        // 先放入的low和blocker排在后放入的high之后
+        assertEquals(Arrays.asList("high", "low", "low", "blocker", "blocker"), order);
+    }
+    
+    @Test(timeout = 10_000)
+    public void multiPCNeverRunsMoreSoftwareThanWorkers() {
+        MultiPC pc = multiPC(3);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        for(int i = 0; i < 20; i++) {
+            pc.addSoftware(new Software() {
+                @Override
+                public void run() {
+                    peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        running.decrementAndGet();
+                    }
+                }
+            }, i % 4);
+        }
+        
+        pc.run();
+        
+        assertTrue("peak=" + peak.get(), peak.get() <= 3);
+        assertTrue(peak.get() > 1);
+        assertEquals(0, pc.queued());
+    }
+    
+    @Test(timeout = 10_000)
+    public void multiPCWaitsForAllSoftwareAndReportsFailure() {
+        MultiPC pc = multiPC(2);
+        AtomicInteger completed = new AtomicInteger();
+        pc.addSoftware(new Software() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("崩溃");
+            }
+        }, 9);
+        for(int i = 0; i < 4; i++) {
+            pc.setSoftware(new Software() {
+                @Override
+                public void run() {
+                    completed.incrementAndGet();
+                }
+            });
+        }
+        
+        CompletionException e = assertThrows(CompletionException.class, pc::run);
+        
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        assertEquals(4, completed.get());
+        assertThrows(IllegalArgumentException.class, () -> new MultiPC(0));
+    }
+    
+    @Test(timeout = 10_000)
+    public void multiPCRejectsRunFromItsOwnWorkerInsteadOfDeadlocking() {
+        MultiPC pc = multiPC(1);
+        MultiPC other = multiPC(1);
+        AtomicInteger otherRuns = new AtomicInteger();
+        other.setSoftware(new Software() {
+            @Override
+            public void run() {
+                otherRuns.incrementAndGet();
+            }
+        });
+        pc.setSoftware(new Software() {
+            @Override
+            public void run() {
+                // 在工作线程中运行另一台MultiPC不会死锁，可以正常进行
+                other.run();
+                pc.run();
+            }
+        });
+        
+        CompletionException e = assertThrows(CompletionException.class, pc::run);
+        
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        assertEquals(1, otherRuns.get());
+    }
+    
+    @Test(timeout = 10_000)
+    public void multiPCRunAfterShutdownQueuesNothing() {
+        MultiPC pc = multiPC(1);
+        AtomicInteger runs = new AtomicInteger();
+        for(int i = 0; i < 3; i++) {
+            pc.setSoftware(new Software() {
+                @Override
+                public void run() {
+                    runs.incrementAndGet();
+                }
+            });
+        }
+        pc.shutdown();
+        
+        assertThrows(RejectedExecutionException.class, pc::run);
+        
+        assertEquals(0, pc.queued());
+        assertEquals(0, runs.get());
+    }
+    
+    @Test(timeout = 10_000)
+    public void swapAndDrainWaitsForCallsOnOldSoftware() throws InterruptedException {
+        SwappablePC pc = new SwappablePC();
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        pc.setSoftware(new Software() {
+            @Override
+            public void run() {
+                entered.countDown();
+                await(release);
+            }
+        });
+        Thread caller = new Thread(pc::run);
+        caller.start();
+        entered.await();
+        assertEquals(1, pc.inFlight());
+        
+        assertFalse(pc.swapAndDrain(new Browser(), 20, TimeUnit.MILLISECONDS));
+        
+        AtomicBoolean drained = new AtomicBoolean();
+        Thread swapper = new Thread(() -> {
+            try {
+                drained.set(pc.swapAndDrain(new MusicPlayer(), 5, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        swapper.start();
+        release.countDown();
+        swapper.join();
+        caller.join();
+        assertTrue(drained.get());
+        assertEquals(0, pc.inFlight());
+    }
+    
+    @Test(timeout = 30_000)
+    public void swapsUnderLoadNeverLeaveCallsOnDrainedSoftware() throws InterruptedException {
+        SwappablePC pc = new SwappablePC();
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicInteger violations = new AtomicInteger();
+        Counting[] current = { new Counting() };
+        pc.setSoftware(current[0]);
+        Thread[] readers = new Thread[4];
+        for(int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread(() -> {
+                while(!stop.get()) {
+                    pc.run();
+                }
+            });
+            readers[i].start();
+        }
+        for(int i = 0; i < 200; i++) {
+            Counting old = current[0];
+            current[0] = new Counting();
+            assertTrue(pc.swapAndDrain(current[0], 5, TimeUnit.SECONDS));
+            // 旧软件已排空，之后不应再有调用进入或停留在旧软件中
+            old.drained = true;
+            if(old.running.get() != 0) {
+                violations.incrementAndGet();
+            }
+        }
+        stop.set(true);
+        for(Thread reader : readers) {
+            reader.join();
+        }
+        
+        assertEquals(0, violations.get());
+        assertEquals(0, Counting.lateCalls.get());
+    }
+    
+    @Test
+    public void swappablePCWithoutSoftwareHasNothingInFlight() {
+        SwappablePC pc = new SwappablePC();
+        
+        assertEquals(0, pc.inFlight());
+        assertThrows(IllegalStateException.class, pc::run);
+        assertEquals(0, pc.inFlight());
+    }
+    
+    @Test(timeout = 10_000)
+    public void poolPrewarmsInstancesAndPooledPCCountsWarmAndColdLaunches() {
+        SoftwarePool pool = new SoftwarePool(Browser::new, 2);
+        pool.prewarm(Runnable::run).join();
+        Browser first = (Browser) pool.poll();
+        Browser second = (Browser) pool.poll();
+        assertTrue(first.isWarm());
+        assertTrue(second.isWarm());
+        assertNull(pool.poll());
+        pool.release(first);
+        pool.release(second);
+        PooledPC pc = new PooledPC(pool);
+        
+        pc.run();
+        pc.run();
+        assertEquals(2, pc.warmLaunches());
+        assertEquals(0, pc.coldLaunches());
+        
+        SoftwarePool empty = new SoftwarePool(MusicPlayer::new, 1);
+        PooledPC coldPC = new PooledPC(empty);
+        coldPC.run();
+        assertEquals(1, coldPC.coldLaunches());
+        // 现场创建的实例归还时已预热，下次作为预热实例借出
+        MusicPlayer returned = (MusicPlayer) empty.poll();
+        assertTrue(returned.isWarm());
+        empty.release(returned);
+        coldPC.run();
+        assertEquals(1, coldPC.warmLaunches());
+        assertSame(returned, empty.poll());
+    }
+    
+    @Test
+    public void poolRejectsForeignSoftwareAndPooledPCRejectsSetSoftware() {
+        SoftwarePool pool = new SoftwarePool(Browser::new, 1);
+        
+        assertThrows(IllegalArgumentException.class, () -> pool.release(new Browser()));
+        assertNull(pool.poll());
+        assertThrows(UnsupportedOperationException.class, () -> new PooledPC(pool).setSoftware(new Browser()));
+    }
+    
+    @Test
+    public void poolRejectsDoubleReleaseAndQueuesEachInstanceOnce() {
+        SoftwarePool pool = new SoftwarePool(Browser::new, 2);
+        pool.prewarm(Runnable::run).join();
+        Software first = pool.poll();
+        
+        // 未借出的空闲实例和已归还的实例都不能再归还
+        Software stillIdle = pool.poll();
+        pool.release(stillIdle);
+        assertThrows(IllegalStateException.class, () -> pool.release(stillIdle));
+        pool.release(first);
+        assertThrows(IllegalStateException.class, () -> pool.release(first));
+        
+        List<Software> polled = Arrays.asList(pool.poll(), pool.poll());
+        assertTrue(polled.contains(first));
+        assertTrue(polled.contains(stillIdle));
+        assertNull(pool.poll());
+        // 再次借出后可以正常归还
+        pool.release(first);
+    }
+    
+    @Test
+    public void warmUpRunsLaunchWithoutOutputAndRunUsesCurrentName() throws UnsupportedEncodingException {
+        PrintStream original = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        Browser browser = new Browser();
+        MusicPlayer player = new MusicPlayer();
+        assertFalse(browser.isWarm());
+        assertFalse(player.isWarm());
+        try {
+            System.setOut(new PrintStream(captured, true, "UTF-8"));
+            browser.warmUp();
+            player.warmUp();
+            assertEquals(0, captured.size());
+            
+            browser.setName("Browser2");
+            browser.run();
+            player.run();
+        } finally {
+            System.setOut(original);
+        }
+        
+        assertTrue(browser.isWarm());
+        assertTrue(player.isWarm());
+        String lineSeparator = System.lineSeparator();
+        assertEquals("启动: Browser2" + lineSeparator + "启动: MusicPlayer" + lineSeparator, captured.toString("UTF-8"));
+    }
+    
+    private MultiPC multiPC(int workers) {
+        MultiPC pc = new MultiPC(workers);
+        pcs.add(pc);
+        return pc;
+    }
+    
+    private static Thread start(MultiPC pc) {
+        Thread t = new Thread(pc::run);
+        t.start();
+        return t;
+    }
+    
+    private static void awaitQueued(MultiPC pc, int count) throws InterruptedException {
+        while(pc.queued() < count) {
+            Thread.sleep(1);
+        }
+    }
+    
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private static class Recording extends Software{
+        private final List<String> order;
+        
+        Recording(String name, List<String> order) {
+            this.order = order;
+            setName(name);
+        }
+        
+        @Override
+        public void run() {
+            order.add(getName());
+        }
+    }
+    
+    private static class Counting extends Software{
+        static final AtomicInteger lateCalls = new AtomicInteger();
+        final AtomicInteger running = new AtomicInteger();
+        volatile boolean drained;
+        
+        @Override
+        public void run() {
+            running.incrementAndGet();
+            if(drained) {
+                lateCalls.incrementAndGet();
+            }
+            running.decrementAndGet();
+        }
+    }
+}
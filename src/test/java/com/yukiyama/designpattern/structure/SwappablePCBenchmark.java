@@ -0,0 +1,66 @@
+package com.yukiyama.designpattern.structure;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SwappablePC.run在竞争下的耗时。readOnly组只有读线程；swapUnderLoad组
+ * 在同样多的读线程之外再有一个线程不停地swapAndDrain，测量替换对读线程的
+ * 影响(重读和撤销登记)以及在满负载下排空一次所需的时间。
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SwappablePCBenchmark {
+    private static final int READERS = 7;
+
+    private final SwappablePC pc = new SwappablePC();
+    private final Software[] software = { new Idle(), new Idle() };
+    private int next;
+
+    public SwappablePCBenchmark() {
+        pc.setSoftware(software[0]);
+    }
+
+    @Benchmark
+    @Group("readOnly")
+    @GroupThreads(READERS)
+    public void readOnlyRun() {
+        pc.run();
+    }
+
+    @Benchmark
+    @Group("swapUnderLoad")
+    @GroupThreads(READERS)
+    public void loadedRun() {
+        pc.run();
+    }
+
+    @Benchmark
+    @Group("swapUnderLoad")
+    @GroupThreads(1)
+    public boolean swapAndDrain() throws InterruptedException {
+        next ^= 1;
+        return pc.swapAndDrain(software[next], 1, TimeUnit.SECONDS);
+    }
+
+    private static class Idle extends Software{
+        @Override
+        public void run() {
+        }
+    }
+}
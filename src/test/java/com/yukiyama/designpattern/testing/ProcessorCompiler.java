@@ -0,0 +1,79 @@
+package com.yukiyama.designpattern.testing;
+
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.processing.Processor;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * 在测试中以指定的注解处理器编译源代码
+ * 源文件、生成的源文件和class文件都放在dir下。被编译的类须在具名包中：
+ * 无名包中的类会让javac在类路径的每个目录(包括当前目录)下查找无名包的
+ * 类，遇到无法转换为路径的文件名时出错。
+ */
+public class ProcessorCompiler {
+    private final Path dir;
+    private final Class<? extends Processor> processor;
+    
+    public ProcessorCompiler(Path dir, Class<? extends Processor> processor) {
+        this.dir = dir;
+        this.processor = processor;
+    }
+    
+    // 编译全限定名为className的一个源文件，返回编译错误
+    public List<String> compile(String className, String... lines) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertNotNull("需要在JDK上运行", compiler);
+        Path source = dir.resolve("src").resolve(className.replace('.', '/') + ".java");
+        Files.createDirectories(source.getParent());
+        Files.write(source, Arrays.asList(lines), StandardCharsets.UTF_8);
+        Files.createDirectories(dir.resolve("gen"));
+        Files.createDirectories(dir.resolve("classes"));
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager files = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8)) {
+            List<String> options = Arrays.asList("-classpath", classPath(),
+                    "-processor", processor.getName(),
+                    "-s", dir.resolve("gen").toString(), "-d", dir.resolve("classes").toString());
+            compiler.getTask(null, files, diagnostics, options, null,
+                    files.getJavaFileObjects(source.toFile())).call();
+        }
+        List<String> errors = new ArrayList<>();
+        for(Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if(diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                errors.add(diagnostic.getMessage(null));
+            }
+        }
+        return errors;
+    }
+    
+    // 读取生成的源文件
+    public String generated(String className) throws IOException {
+        Path file = dir.resolve("gen").resolve(className.replace('.', '/') + ".java");
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+    
+    // 当前类路径去掉空项。surefire的类路径以分隔符结尾，空项表示当前目录
+    static String classPath() {
+        List<String> entries = new ArrayList<>();
+        for(String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            if(!entry.isEmpty()) {
+                entries.add(entry);
+            }
+        }
+        return String.join(File.pathSeparator, entries);
+    }
+}
@@ -0,0 +1,55 @@
+package com.yukiyama.designpattern.testing;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * 并发首次访问
+ * 让多个线程在门闩打开后同时执行同一个操作，用于验证懒加载只创建一个实例。
+ */
+public final class Races {
+
+    private Races() {}
+
+    // threads个线程同时调用access，断言都拿到同一个非null实例并返回它；
+    // 任一线程抛出的异常会使断言失败
+    public static <T> T sameInstance(int threads, Supplier<T> access) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        Object[] seen = new Object[threads];
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for(int i = 0; i < threads; i++) {
+            int slot = i;
+            new Thread(() -> {
+                try {
+                    start.await();
+                    seen[slot] = access.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException | Error e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        start.countDown();
+        assertTrue("线程未在限定时间内结束", done.await(20, TimeUnit.SECONDS));
+        if(failure.get() != null) {
+            throw new AssertionError("并发访问失败", failure.get());
+        }
+        assertNotNull(seen[0]);
+        for(Object instance : seen) {
+            assertSame(seen[0], instance);
+        }
+        @SuppressWarnings("unchecked")
+        T first = (T) seen[0];
+        return first;
+    }
+}